@@ -0,0 +1,484 @@
+package org.kernelab.jdl;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Bind the text of a cell to a parameter according to the type of its target
+ * column, so that the conversion is done by the workers instead of the
+ * database. The text which could not be converted is bound as string and left
+ * to the database.
+ */
+public abstract class ColumnBinder
+{
+	public static class DateBinder extends ColumnBinder
+	{
+		public DateBinder(int type, String format)
+		{
+			super(type, format);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			if (this.getFormat() != null)
+			{
+				ps.setTimestamp(index, new Timestamp(this.parse(value)));
+			}
+			else if (value.length() > 10)
+			{
+				ps.setTimestamp(index, Timestamp.valueOf(value.replace('T', ' ')));
+			}
+			else
+			{
+				ps.setDate(index, Date.valueOf(value));
+			}
+		}
+	}
+
+	public static class DecimalBinder extends ColumnBinder
+	{
+		public DecimalBinder(int type)
+		{
+			super(type, null);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			ps.setBigDecimal(index, new BigDecimal(value.trim()));
+		}
+	}
+
+	public static class DoubleBinder extends ColumnBinder
+	{
+		public DoubleBinder(int type)
+		{
+			super(type, null);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			ps.setDouble(index, Double.parseDouble(value));
+		}
+	}
+
+	public static class LongBinder extends ColumnBinder
+	{
+		public LongBinder(int type)
+		{
+			super(type, null);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			ps.setLong(index, Long.parseLong(value.trim()));
+		}
+	}
+
+	public static class StringBinder extends ColumnBinder
+	{
+		public StringBinder(int type)
+		{
+			super(type, null);
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			if (this.isNull(value))
+			{
+				ps.setNull(index, this.getType());
+			}
+			else
+			{
+				ps.setString(index, value);
+			}
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			ps.setString(index, value);
+		}
+
+		/**
+		 * The empty text is kept as is for strings.
+		 */
+		@Override
+		public boolean isNull(String value)
+		{
+			return value == null || NULL_TEXT.equals(value);
+		}
+	}
+
+	public static class TimeBinder extends ColumnBinder
+	{
+		public TimeBinder(int type, String format)
+		{
+			super(type, format);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			if (this.getFormat() != null)
+			{
+				ps.setTime(index, new Time(this.parse(value)));
+			}
+			else
+			{
+				ps.setTime(index, Time.valueOf(value));
+			}
+		}
+	}
+
+	public static class TimestampBinder extends ColumnBinder
+	{
+		public TimestampBinder(int type, String format)
+		{
+			super(type, format);
+		}
+
+		@Override
+		protected void convert(PreparedStatement ps, int index, String value) throws SQLException
+		{
+			if (this.getFormat() != null)
+			{
+				ps.setTimestamp(index, new Timestamp(this.parse(value)));
+			}
+			else if (value.length() <= 10)
+			{
+				ps.setTimestamp(index, new Timestamp(Date.valueOf(value).getTime()));
+			}
+			else
+			{
+				ps.setTimestamp(index, Timestamp.valueOf(value.replace('T', ' ')));
+			}
+		}
+	}
+
+	/**
+	 * The text which stands for NULL.
+	 */
+	public static final String	NULL_TEXT	= "\\N";
+
+	/**
+	 * Create the binder of the given SQL type.
+	 *
+	 * @param type
+	 *            the type defined in {@link java.sql.Types}.
+	 * @param format
+	 *            the pattern of dates and times, or null for the JDBC escape
+	 *            formats.
+	 */
+	public static ColumnBinder of(int type, String format)
+	{
+		switch (type)
+		{
+			case Types.BIGINT:
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return new LongBinder(type);
+
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return new DecimalBinder(type);
+
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return new DoubleBinder(type);
+
+			case Types.DATE:
+				return new DateBinder(type, format);
+
+			case Types.TIME:
+				return new TimeBinder(type, format);
+
+			case Types.TIMESTAMP:
+				return new TimestampBinder(type, format);
+
+			default:
+				return new StringBinder(Types.VARCHAR);
+		}
+	}
+
+	/**
+	 * Create the binders of all parameters of the template. The types of the
+	 * parameters which are target columns are resolved by DatabaseMetaData,
+	 * and the others by ParameterMetaData if the driver supports. The
+	 * parameters whose type is unknown are bound as string.
+	 */
+	public static ColumnBinder[] resolve(Connection conn, InsertTemplate template, String format)
+	{
+		String[] columns = template.getColumns();
+		int[] types = new int[columns.length];
+		Arrays.fill(types, Types.NULL);
+
+		Map<String, Integer> known = null;
+		try
+		{
+			known = resolveColumnTypes(conn, template.getTable());
+		}
+		catch (Exception e)
+		{
+			known = new HashMap<String, Integer>();
+		}
+
+		boolean unknown = false;
+		Integer type = null;
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (columns[i] != null && (type = known.get(unquote(columns[i]).toUpperCase())) != null)
+			{
+				types[i] = type;
+			}
+			else
+			{
+				unknown = true;
+			}
+		}
+
+		if (unknown)
+		{
+			PreparedStatement ps = null;
+			try
+			{
+				ps = conn.prepareStatement(template.getInsert());
+				ParameterMetaData meta = ps.getParameterMetaData();
+				if (meta != null && meta.getParameterCount() == types.length)
+				{
+					for (int i = 0; i < types.length; i++)
+					{
+						if (types[i] == Types.NULL)
+						{
+							types[i] = meta.getParameterType(i + 1);
+						}
+					}
+				}
+			}
+			catch (SQLException e)
+			{
+			}
+			finally
+			{
+				if (ps != null)
+				{
+					try
+					{
+						ps.close();
+					}
+					catch (SQLException e)
+					{
+					}
+				}
+			}
+		}
+
+		ColumnBinder[] binders = new ColumnBinder[types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			binders[i] = of(types[i], format);
+		}
+		return binders;
+	}
+
+	/**
+	 * Get the types of all columns of the table, keyed by the upper case of
+	 * the column names. The table could be qualified by schema or catalog.
+	 */
+	protected static Map<String, Integer> resolveColumnTypes(Connection conn, String table) throws SQLException
+	{
+		Map<String, Integer> types = new HashMap<String, Integer>();
+		for (Entry<String, String> pair : resolveColumns(conn, table, "DATA_TYPE").entrySet())
+		{
+			types.put(pair.getKey(), Integer.valueOf(pair.getValue()));
+		}
+		return types;
+	}
+
+	/**
+	 * Get the given column of {@link DatabaseMetaData#getColumns} for all
+	 * columns of the table, keyed by the upper case of the column names. The
+	 * table could be qualified by schema or catalog.
+	 */
+	protected static Map<String, String> resolveColumns(Connection conn, String table, String label)
+			throws SQLException
+	{
+		DatabaseMetaData meta = conn.getMetaData();
+
+		String[] names = table.trim().split("\\s*\\.\\s*");
+		String name = identifier(meta, names[names.length - 1]);
+		String schema = names.length > 1 ? identifier(meta, names[names.length - 2]) : null;
+		String catalog = names.length > 2 ? identifier(meta, names[names.length - 3]) : null;
+
+		Map<String, String> columns = readColumns(meta, catalog, schema, name, label);
+		if (columns.isEmpty() && names.length == 2)
+		{
+			// Some databases such as MySQL take the qualifier as catalog.
+			columns = readColumns(meta, schema, null, name, label);
+		}
+		return columns;
+	}
+
+	protected static Map<String, String> readColumns(DatabaseMetaData meta, String catalog, String schema,
+			String table, String label) throws SQLException
+	{
+		Map<String, String> columns = new HashMap<String, String>();
+		ResultSet rs = meta.getColumns(catalog, schema, table, null);
+		if (rs == null)
+		{
+			return columns;
+		}
+		try
+		{
+			while (rs.next())
+			{
+				columns.put(rs.getString("COLUMN_NAME").toUpperCase(), rs.getString(label));
+			}
+		}
+		finally
+		{
+			rs.close();
+		}
+		return columns;
+	}
+
+	/**
+	 * Get the identifier as stored in the meta data, the quoted one is kept as
+	 * is and the unquoted one follows the case which the database stores.
+	 */
+	protected static String identifier(DatabaseMetaData meta, String name) throws SQLException
+	{
+		String unquoted = unquote(name);
+		if (!unquoted.equals(name))
+		{
+			return unquoted;
+		}
+		if (meta.storesUpperCaseIdentifiers())
+		{
+			return name.toUpperCase();
+		}
+		if (meta.storesLowerCaseIdentifiers())
+		{
+			return name.toLowerCase();
+		}
+		return name;
+	}
+
+	protected static String unquote(String name)
+	{
+		name = name.trim();
+		if (name.length() >= 2)
+		{
+			char head = name.charAt(0), tail = name.charAt(name.length() - 1);
+			if ((head == '"' && tail == '"') || (head == '`' && tail == '`') || (head == '[' && tail == ']'))
+			{
+				return name.substring(1, name.length() - 1);
+			}
+		}
+		return name;
+	}
+
+	private final int							type;
+
+	private final String						format;
+
+	/**
+	 * The date format is not thread safe, so each worker thread keeps its own.
+	 */
+	private final ThreadLocal<SimpleDateFormat>	formats;
+
+	protected ColumnBinder(int type, final String format)
+	{
+		this.type = type;
+		this.format = format;
+		this.formats = format == null ? null : new ThreadLocal<SimpleDateFormat>()
+		{
+			@Override
+			protected SimpleDateFormat initialValue()
+			{
+				SimpleDateFormat df = new SimpleDateFormat(format);
+				df.setLenient(false);
+				return df;
+			}
+		};
+	}
+
+	/**
+	 * Bind the value, which is bound as NULL if {@link #isNull(String)}.
+	 */
+	public void bind(PreparedStatement ps, int index, String value) throws SQLException
+	{
+		if (this.isNull(value))
+		{
+			ps.setNull(index, type);
+			return;
+		}
+		try
+		{
+			this.convert(ps, index, value);
+		}
+		catch (IllegalArgumentException e)
+		{
+			ps.setString(index, value);
+		}
+	}
+
+	protected abstract void convert(PreparedStatement ps, int index, String value) throws SQLException;
+
+	public String getFormat()
+	{
+		return format;
+	}
+
+	public int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Tell whether the value stands for NULL, that is the null, empty text or
+	 * {@link #NULL_TEXT}.
+	 */
+	public boolean isNull(String value)
+	{
+		return value == null || value.length() == 0 || NULL_TEXT.equals(value);
+	}
+
+	/**
+	 * Parse the value by the format strictly, the whole text must be taken.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value could not be parsed.
+	 */
+	protected long parse(String value)
+	{
+		ParsePosition pos = new ParsePosition(0);
+		java.util.Date date = formats.get().parse(value, pos);
+		if (date == null || pos.getIndex() != value.length())
+		{
+			throw new IllegalArgumentException("Unparseable date: \"" + value + "\"");
+		}
+		return date.getTime();
+	}
+}
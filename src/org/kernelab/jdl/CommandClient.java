@@ -64,18 +64,76 @@ public class CommandClient
 
 	public static final String		KEY_CONC				= "conc";
 
+	public static final String		KEY_CONC_MIN			= "concMin";
+
+	public static final String		KEY_CONC_MAX			= "concMax";
+
+	public static final String		KEY_CONC_INTERVAL		= "concInterval";
+
 	public static final String		KEY_REBALANCE			= "rebalance";
 
+	public static final String		KEY_SPLIT				= "split";
+
+	public static final String		KEY_MAP_FILE			= "mapFile";
+
+	public static final String		KEY_PARSE_BUFFER		= "parseBuffer";
+
 	public static final String		KEY_BATCH_SIZE			= "batchSize";
 
+	public static final String		KEY_COMMIT_INTERVAL		= "commitInterval";
+
+	public static final String		KEY_COMMIT_ROWS			= "commitRows";
+
+	public static final String		KEY_BATCH_LATENCY		= "batchLatency";
+
+	public static final String		KEY_BATCH_SIZE_MIN		= "batchSizeMin";
+
+	public static final String		KEY_BATCH_SIZE_MAX		= "batchSizeMax";
+
 	public static final String		KEY_REWRITE_BATCH		= "rewriteBatch";
 
+	public static final String		KEY_REWRITE_CHUNKED		= "rewriteChunked";
+
+	public static final String		KEY_REWRITE_PARAMS		= "rewriteParams";
+
+	public static final String		KEY_REWRITE_BYTES		= "rewriteBytes";
+
+	public static final String		KEY_PIPELINE			= "pipeline";
+
+	public static final String		KEY_VIRTUAL_THREAD		= "virtualThread";
+
 	public static final String		KEY_AUTO_COMMIT			= "autoCommit";
 
 	public static final String		KEY_IGNORE_ERROR		= "ignoreError";
 
 	public static final String		KEY_USE_RAW_CMD			= "useRawCmd";
 
+	public static final String		KEY_POOL				= "pool";
+
+	public static final String		KEY_RETRY				= "retry";
+
+	public static final String		KEY_ERROR_CLASSIFIER	= "errorClassifier";
+
+	public static final String		KEY_TYPED_BIND			= "typedBind";
+
+	public static final String		KEY_DATE_FORMAT			= "dateFormat";
+
+	public static final String		KEY_DIALECT				= "dialect";
+
+	public static final String		KEY_ENGINE				= "engine";
+
+	public static final String		KEY_DIRECT_PATH			= "directPath";
+
+	public static final String		KEY_INIT_SQL			= "initSql";
+
+	public static final String		KEY_BEFORE_SQL			= "beforeSql";
+
+	public static final String		KEY_AFTER_SQL			= "afterSql";
+
+	public static final String		KEY_DEFER_INDEX			= "deferIndex";
+
+	public static final String		KEY_INDEX_CONCURRENCY	= "indexConcurrency";
+
 	public static final int			REBALANCE_NONE			= 0;
 
 	public static final int			REBALANCE_PICKONE		= 1;
@@ -88,10 +146,34 @@ public class CommandClient
 
 	public static final int			DEFAULT_REBALANCE		= REBALANCE_NONE;
 
+	public static final int			DEFAULT_SPLIT			= 1;
+
 	public static final int			DEFAULT_BATCH_SIZE		= 500;
 
+	public static final int			DEFAULT_BATCH_SIZE_MIN	= 10;
+
+	public static final int			DEFAULT_BATCH_SIZE_MAX	= 50000;
+
 	public static final boolean		DEFAULT_REWRITE_BATCH	= false;
 
+	public static final boolean		DEFAULT_REWRITE_CHUNKED	= false;
+
+	public static final int			DEFAULT_REWRITE_PARAMS	= 65535;
+
+	public static final long		DEFAULT_REWRITE_BYTES	= 0L;
+
+	public static final boolean		DEFAULT_PIPELINE		= false;
+
+	public static final boolean		DEFAULT_VIRTUAL_THREAD	= false;
+
+	public static final int			DEFAULT_RETRY			= 3;
+
+	/**
+	 * The milliseconds to wait on shutdown for the load to rebuild the
+	 * deferred indexes and run the AFTER SQL.
+	 */
+	public static final long		SHUTDOWN_TIMEOUT		= 300000L;
+
 	protected static final Pattern	REGEX_LINK				= Pattern.compile("^LINK\\b(.*)$",
 			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
@@ -125,6 +207,17 @@ public class CommandClient
 		return text;
 	}
 
+	/**
+	 * Join the SQL of the link, which are separated by semicolons, and those
+	 * given in the LOAD command.
+	 */
+	protected static List<String> joinSql(String link, List<String> cmd)
+	{
+		List<String> sqls = LoadBuilder.splitSql(link);
+		sqls.addAll(cmd);
+		return sqls;
+	}
+
 	public static void main(String[] args)
 	{
 		try
@@ -338,8 +431,20 @@ public class CommandClient
 
 	private int									conc			= 1;
 
+	private int									concMin			= 1;
+
+	private int									concMax			= 0;
+
+	private long								concInterval	= ConcurrencyController.DEFAULT_INTERVAL;
+
 	private int									rebalance		= DEFAULT_REBALANCE;
 
+	private int									split			= DEFAULT_SPLIT;
+
+	private boolean								mapFile			= false;
+
+	private int									parseBuffer		= RecordParser.DEFAULT_BUFFER_SIZE;
+
 	private boolean								autoCommit		= true;
 
 	private boolean								ignoreError		= false;
@@ -348,10 +453,66 @@ public class CommandClient
 
 	private int									batchSize		= DEFAULT_BATCH_SIZE;
 
+	private int									commitInterval	= 0;
+
+	private long								commitRows		= 0L;
+
+	private long								batchLatency	= 0L;
+
+	private int									batchSizeMin	= DEFAULT_BATCH_SIZE_MIN;
+
+	private int									batchSizeMax	= DEFAULT_BATCH_SIZE_MAX;
+
 	private boolean								rewriteBatch	= DEFAULT_REWRITE_BATCH;
 
+	private boolean								rewriteChunked	= DEFAULT_REWRITE_CHUNKED;
+
+	private int									rewriteParams	= DEFAULT_REWRITE_PARAMS;
+
+	private long								rewriteBytes	= DEFAULT_REWRITE_BYTES;
+
+	private boolean								pipeline		= DEFAULT_PIPELINE;
+
+	private boolean								virtualThread	= DEFAULT_VIRTUAL_THREAD;
+
 	private DataBase							dataBase;
 
+	private final ConnectionHealth				health			= new ConnectionHealth();
+
+	private final Failover						failover		= new Failover();
+
+	private boolean								pool			= true;
+
+	private int									retry			= DEFAULT_RETRY;
+
+	private ErrorClassifier						errorClassifier	= new GeneralErrorClassifier();
+
+	private boolean								typedBind		= false;
+
+	private String								dateFormat		= null;
+
+	private LoadDialect							dialect			= null;
+
+	private String								engine			= null;
+
+	private boolean								directPath		= false;
+
+	private String								initSql			= null;
+
+	private String								beforeSql		= null;
+
+	private String								afterSql		= null;
+
+	private boolean								deferIndex		= false;
+
+	private int									indexConc		= 0;
+
+	/**
+	 * The connection pools of links which are kept until the client is closed
+	 * or the process exits.
+	 */
+	private Map<String, ConnectionPool>			pools			= new HashMap<String, ConnectionPool>();
+
 	private Connection							connection;
 
 	private Statement							statement;
@@ -362,6 +523,23 @@ public class CommandClient
 
 	private boolean								exit			= false;
 
+	/**
+	 * Close the connection and the connection pools of this client, which
+	 * should be called when the client is driven by execute instead of
+	 * interact.
+	 */
+	public void close() throws SQLException
+	{
+		try
+		{
+			this.closeConnection();
+		}
+		finally
+		{
+			this.closePools();
+		}
+	}
+
 	protected void closeConnection() throws SQLException
 	{
 		Connection conn = this.getConnection(false);
@@ -419,6 +597,15 @@ public class CommandClient
 		}
 	}
 
+	protected synchronized void closePools()
+	{
+		for (ConnectionPool pool : this.pools.values())
+		{
+			pool.close();
+		}
+		this.pools.clear();
+	}
+
 	protected String decrypt(String cls, String pwd, Map<String, String> prop) throws Exception
 	{
 		return cls != null ? ((Cryptor) Class.forName(cls).newInstance()).decrypt(pwd, prop) : pwd;
@@ -481,6 +668,7 @@ public class CommandClient
 		}
 		catch (Throwable e)
 		{
+			health.suspect();
 			this.printError(e, cmd);
 			return false;
 		}
@@ -488,15 +676,39 @@ public class CommandClient
 
 	protected boolean executeLoadData(String cmd) throws Exception
 	{
-		LoadBuilder build = new LoadBuilder().resolve(cmd);
+		LoadBuilder build = new LoadBuilder().setBufferSize(this.getParseBuffer()).resolve(cmd);
 
 		LoadMaster master = new LoadMaster() //
 				.setConcurrency(this.getConcurrency())//
 				.setBatchSize(this.getBatchSize()) //
+				.setCommitInterval(this.getCommitInterval()) //
+				.setCommitRows(this.getCommitRows()) //
+				.setBatchLatency(this.getBatchLatency()) //
+				.setBatchSizeMin(this.getBatchSizeMin()) //
+				.setBatchSizeMax(this.getBatchSizeMax()) //
 				.setDataBase(this.getDataBase()) //
+				.setPool(this.getPool()) //
+				.setRetry(this.getRetry()) //
+				.setErrorClassifier(this.getErrorClassifier()) //
+				.setTypedBind(this.isTypedBind()) //
+				.setDateFormat(this.getDateFormat()) //
+				.setDialect(this.getDialect()) //
+				.setEngine(this.getEngine()) //
+				.setDirectPath(this.isDirectPath()) //
+				.setInitSql(joinSql(this.getInitSql(), build.getInitSql())) //
+				.setBeforeSql(joinSql(this.getBeforeSql(), build.getBeforeSql())) //
+				.setAfterSql(joinSql(this.getAfterSql(), build.getAfterSql())) //
+				.setDeferIndex(this.isDeferIndex()) //
+				.setIndexConcurrency(this.getIndexConcurrency()) //
 				.setRebalance(this.getRebalance()) //
 				.setRewriteBatch(this.isRewriteBatch()) //
-				.setParser(build.buildParser()) //
+				.setRewriteChunked(this.isRewriteChunked()) //
+				.setRewriteParams(this.getRewriteParams()) //
+				.setRewriteBytes(this.getRewriteBytes()) //
+				.setPipeline(this.isPipeline()) //
+				.setVirtualThread(this.isVirtualThread()) //
+				.setController(this.newController()) //
+				.setParsers(build.buildParsers(this.getSplit(), this.isMapFile())) //
 				.setTemplate(build.buildTemplate()) //
 				.setOut(this.getOut()) //
 				.setErr(this.getErr());
@@ -575,16 +787,66 @@ public class CommandClient
 		}
 	}
 
+	public String getAfterSql()
+	{
+		return afterSql;
+	}
+
+	public long getBatchLatency()
+	{
+		return batchLatency;
+	}
+
 	public int getBatchSize()
 	{
 		return batchSize;
 	}
 
+	public int getBatchSizeMax()
+	{
+		return batchSizeMax;
+	}
+
+	public int getBatchSizeMin()
+	{
+		return batchSizeMin;
+	}
+
+	public String getBeforeSql()
+	{
+		return beforeSql;
+	}
+
+	public int getCommitInterval()
+	{
+		return commitInterval;
+	}
+
+	public long getCommitRows()
+	{
+		return commitRows;
+	}
+
 	public int getConcurrency()
 	{
 		return conc;
 	}
 
+	public long getConcurrencyInterval()
+	{
+		return concInterval;
+	}
+
+	public int getConcurrencyMax()
+	{
+		return concMax;
+	}
+
+	public int getConcurrencyMin()
+	{
+		return concMin;
+	}
+
 	protected Connection getConnection() throws SQLException
 	{
 		return getConnection(true);
@@ -596,61 +858,46 @@ public class CommandClient
 		{
 			try
 			{
-				if (connection == null || !connection.isValid(5))
+				if (connection != null && health.isNeedValidate()
+						&& !connection.isValid(ConnectionHealth.VALIDATE_TIMEOUT))
 				{
-					if (connection != null)
+					try
 					{
-						try
-						{
-							connection.rollback();
-						}
-						catch (SQLException e)
-						{
-						}
-						try
-						{
-							connection.close();
-						}
-						catch (SQLException e)
-						{
-						}
-						finally
-						{
-							connection = null;
-						}
+						connection.rollback();
 					}
-					if (newIfNull)
+					catch (SQLException e)
 					{
-						Connection conn = this.newConnection();
-						if (conn.isValid(5))
-						{
-							conn.setAutoCommit(this.isAutoCommit());
-							connection = conn;
-						}
-						else
-						{
-							try
-							{
-								conn.close();
-							}
-							catch (SQLException e)
-							{
-							}
-						}
+					}
+					try
+					{
+						connection.close();
+					}
+					catch (SQLException e)
+					{
+					}
+					finally
+					{
+						connection = null;
 					}
 				}
-			}
-			catch (SQLException e)
-			{
-				printError(e);
-				try
+				if (connection == null && newIfNull)
 				{
-					Thread.sleep(10 * 1000);
+					Connection conn = this.newConnection();
+					conn.setAutoCommit(this.isAutoCommit());
+					connection = conn;
+					health.connected();
 				}
-				catch (InterruptedException e1)
+				else if (connection != null)
 				{
+					health.touch();
 				}
 			}
+			catch (SQLException e)
+			{
+				printError(e);
+				health.suspect();
+				health.backoff();
+			}
 		}
 		while (connection == null && newIfNull);
 
@@ -662,16 +909,31 @@ public class CommandClient
 		return dataBase;
 	}
 
+	public String getDateFormat()
+	{
+		return dateFormat;
+	}
+
 	protected String getDelimiter()
 	{
 		return delimiter;
 	}
 
+	public LoadDialect getDialect()
+	{
+		return dialect;
+	}
+
 	protected Map<String, Map<String, String>> getDict()
 	{
 		return dict;
 	}
 
+	public String getEngine()
+	{
+		return engine;
+	}
+
 	protected Entrance getEntr()
 	{
 		return entr;
@@ -682,6 +944,11 @@ public class CommandClient
 		return err;
 	}
 
+	public ErrorClassifier getErrorClassifier()
+	{
+		return errorClassifier;
+	}
+
 	public String getHint()
 	{
 		return hint;
@@ -699,6 +966,16 @@ public class CommandClient
 		}
 	}
 
+	public int getIndexConcurrency()
+	{
+		return indexConc;
+	}
+
+	public String getInitSql()
+	{
+		return initSql;
+	}
+
 	protected String getLink()
 	{
 		return link;
@@ -724,11 +1001,55 @@ public class CommandClient
 		return value != null ? value : deft;
 	}
 
+	public int getParseBuffer()
+	{
+		return parseBuffer;
+	}
+
+	/**
+	 * Get the connection pool of current link, which is created on demand.
+	 * Return null if the pool is disabled.
+	 */
+	protected synchronized ConnectionPool getPool()
+	{
+		if (!this.isPool() || this.getDataBase() == null)
+		{
+			return null;
+		}
+		ConnectionPool pool = this.pools.get(this.getLink());
+		if (pool == null)
+		{
+			pool = new ConnectionPool(this.getDataBase());
+			this.pools.put(this.getLink(), pool);
+		}
+		return pool;
+	}
+
 	public int getRebalance()
 	{
 		return rebalance;
 	}
 
+	public int getRetry()
+	{
+		return retry;
+	}
+
+	public long getRewriteBytes()
+	{
+		return rewriteBytes;
+	}
+
+	public int getRewriteParams()
+	{
+		return rewriteParams;
+	}
+
+	public int getSplit()
+	{
+		return split;
+	}
+
 	public boolean interact()
 	{
 		List<String> lines = new LinkedList<String>();
@@ -805,7 +1126,7 @@ public class CommandClient
 			}
 			try
 			{
-				this.closeConnection();
+				this.close();
 			}
 			catch (SQLException e)
 			{
@@ -834,6 +1155,16 @@ public class CommandClient
 		return autoCommit;
 	}
 
+	public boolean isDeferIndex()
+	{
+		return deferIndex;
+	}
+
+	public boolean isDirectPath()
+	{
+		return directPath;
+	}
+
 	protected boolean isExit()
 	{
 		return exit;
@@ -844,6 +1175,21 @@ public class CommandClient
 		return ignoreError;
 	}
 
+	public boolean isMapFile()
+	{
+		return mapFile;
+	}
+
+	public boolean isPipeline()
+	{
+		return pipeline;
+	}
+
+	public boolean isPool()
+	{
+		return pool;
+	}
+
 	public boolean isQuiet()
 	{
 		return quiet;
@@ -854,16 +1200,31 @@ public class CommandClient
 		return rewriteBatch;
 	}
 
+	public boolean isRewriteChunked()
+	{
+		return rewriteChunked;
+	}
+
 	public boolean isSuccess()
 	{
 		return success;
 	}
 
+	public boolean isTypedBind()
+	{
+		return typedBind;
+	}
+
 	public boolean isUseRawCmd()
 	{
 		return useRawCmd;
 	}
 
+	public boolean isVirtualThread()
+	{
+		return virtualThread;
+	}
+
 	protected CommandClient link(Map<String, String> prop) throws Exception
 	{
 		String url = getParam(KEY_URL, prop);
@@ -883,12 +1244,42 @@ public class CommandClient
 
 		return this.setDataBase(url, usr, pwd) //
 				.setConcurrency(Variable.asInteger(getParam(KEY_CONC, prop), 1)) //
+				.setConcurrencyMin(Variable.asInteger(getParam(KEY_CONC_MIN, prop), 1)) //
+				.setConcurrencyMax(Variable.asInteger(getParam(KEY_CONC_MAX, prop), 0)) //
+				.setConcurrencyInterval(
+						Variable.asLong(getParam(KEY_CONC_INTERVAL, prop), ConcurrencyController.DEFAULT_INTERVAL)) //
 				.setRebalance(Variable.asInteger(getParam(KEY_REBALANCE, prop), DEFAULT_REBALANCE)) //
+				.setSplit(Variable.asInteger(getParam(KEY_SPLIT, prop), DEFAULT_SPLIT)) //
+				.setMapFile("true".equalsIgnoreCase(getParam(KEY_MAP_FILE, prop))) //
+				.setParseBuffer(Variable.asInteger(getParam(KEY_PARSE_BUFFER, prop), RecordParser.DEFAULT_BUFFER_SIZE)) //
 				.setBatchSize(Variable.asInteger(getParam(KEY_BATCH_SIZE, prop), DEFAULT_BATCH_SIZE)) //
+				.setCommitInterval(Variable.asInteger(getParam(KEY_COMMIT_INTERVAL, prop), 0)) //
+				.setCommitRows(Variable.asLong(getParam(KEY_COMMIT_ROWS, prop), 0L)) //
+				.setBatchLatency(Variable.asLong(getParam(KEY_BATCH_LATENCY, prop), 0L)) //
+				.setBatchSizeMin(Variable.asInteger(getParam(KEY_BATCH_SIZE_MIN, prop), DEFAULT_BATCH_SIZE_MIN)) //
+				.setBatchSizeMax(Variable.asInteger(getParam(KEY_BATCH_SIZE_MAX, prop), DEFAULT_BATCH_SIZE_MAX)) //
 				.setRewriteBatch("true".equalsIgnoreCase(getParam(KEY_REWRITE_BATCH, prop))) //
+				.setRewriteChunked("true".equalsIgnoreCase(getParam(KEY_REWRITE_CHUNKED, prop))) //
+				.setRewriteParams(Variable.asInteger(getParam(KEY_REWRITE_PARAMS, prop), DEFAULT_REWRITE_PARAMS)) //
+				.setRewriteBytes(Variable.asLong(getParam(KEY_REWRITE_BYTES, prop), DEFAULT_REWRITE_BYTES)) //
+				.setPipeline("true".equalsIgnoreCase(getParam(KEY_PIPELINE, prop))) //
+				.setVirtualThread("true".equalsIgnoreCase(getParam(KEY_VIRTUAL_THREAD, prop))) //
 				.setAutoCommit(!"false".equalsIgnoreCase(getParam(KEY_AUTO_COMMIT, prop))) //
 				.setIgnoreError("true".equalsIgnoreCase(getParam(KEY_IGNORE_ERROR, prop))) //
 				.setUseRawCmd("true".equalsIgnoreCase(getParam(KEY_USE_RAW_CMD, prop))) //
+				.setPool(!"false".equalsIgnoreCase(getParam(KEY_POOL, prop))) //
+				.setRetry(Variable.asInteger(getParam(KEY_RETRY, prop), DEFAULT_RETRY)) //
+				.setErrorClassifier(this.newErrorClassifier(getParam(KEY_ERROR_CLASSIFIER, prop))) //
+				.setTypedBind("true".equalsIgnoreCase(getParam(KEY_TYPED_BIND, prop))) //
+				.setDateFormat(getParam(KEY_DATE_FORMAT, prop)) //
+				.setDialect(LoadDialect.of(getParam(KEY_DIALECT, prop), url)) //
+				.setEngine(getParam(KEY_ENGINE, prop)) //
+				.setDirectPath("true".equalsIgnoreCase(getParam(KEY_DIRECT_PATH, prop))) //
+				.setInitSql(getParam(KEY_INIT_SQL, prop)) //
+				.setBeforeSql(getParam(KEY_BEFORE_SQL, prop)) //
+				.setAfterSql(getParam(KEY_AFTER_SQL, prop)) //
+				.setDeferIndex("true".equalsIgnoreCase(getParam(KEY_DEFER_INDEX, prop))) //
+				.setIndexConcurrency(Variable.asInteger(getParam(KEY_INDEX_CONCURRENCY, prop), 0)) //
 		;
 	}
 
@@ -922,6 +1313,8 @@ public class CommandClient
 			@Override
 			public void run()
 			{
+				LoadMaster master = null;
+
 				synchronized (CommandClient.this)
 				{
 					if (statement != null)
@@ -935,20 +1328,56 @@ public class CommandClient
 						}
 					}
 
-					if (loader != null)
+					master = loader;
+					if (master != null)
 					{
-						loader.stop();
+						master.stop();
 					}
 				}
+
+				// The pools are kept until the master has rebuilt the deferred
+				// indexes and run the AFTER SQL.
+				if (master != null && !master.waitForStopped(SHUTDOWN_TIMEOUT))
+				{
+					getErr().println("The load was not stopped in " + (SHUTDOWN_TIMEOUT / 1000) + "s");
+				}
+
+				closePools();
 			}
 		});
 	}
 
+	/**
+	 * Create the connection of the client itself, which is not taken from the
+	 * pool since the session state changed by the script would leak to the
+	 * workers of LOAD.
+	 */
 	protected Connection newConnection() throws SQLException
 	{
 		return this.getDataBase().newConnection();
 	}
 
+	/**
+	 * Create the controller of concurrency if concMax is greater than conc,
+	 * otherwise the concurrency would be fixed.
+	 */
+	protected ConcurrencyController newController()
+	{
+		if (this.getConcurrencyMax() <= this.getConcurrency())
+		{
+			return null;
+		}
+		return new ConcurrencyController() //
+				.setMin(Math.min(this.getConcurrencyMin(), this.getConcurrency())) //
+				.setMax(this.getConcurrencyMax()) //
+				.setInterval(this.getConcurrencyInterval());
+	}
+
+	protected ErrorClassifier newErrorClassifier(String cls) throws Exception
+	{
+		return cls != null ? (ErrorClassifier) Class.forName(cls).newInstance() : new GeneralErrorClassifier();
+	}
+
 	protected void output(Object msg, boolean wrapLine)
 	{
 		if (this.getOut() != null)
@@ -980,24 +1409,84 @@ public class CommandClient
 		printError(this.getErr(), err, cmd);
 	}
 
+	public CommandClient setAfterSql(String afterSql)
+	{
+		this.afterSql = Tools.isNullOrWhite(afterSql) ? null : afterSql;
+		return this;
+	}
+
 	public CommandClient setAutoCommit(boolean autoCommit)
 	{
 		this.autoCommit = autoCommit;
 		return this;
 	}
 
+	public CommandClient setBatchLatency(long batchLatency)
+	{
+		this.batchLatency = batchLatency;
+		return this;
+	}
+
 	public CommandClient setBatchSize(int batchSize)
 	{
 		this.batchSize = batchSize;
 		return this;
 	}
 
+	public CommandClient setBatchSizeMax(int batchSizeMax)
+	{
+		this.batchSizeMax = batchSizeMax;
+		return this;
+	}
+
+	public CommandClient setBatchSizeMin(int batchSizeMin)
+	{
+		this.batchSizeMin = batchSizeMin;
+		return this;
+	}
+
+	public CommandClient setBeforeSql(String beforeSql)
+	{
+		this.beforeSql = Tools.isNullOrWhite(beforeSql) ? null : beforeSql;
+		return this;
+	}
+
+	public CommandClient setCommitInterval(int commitInterval)
+	{
+		this.commitInterval = commitInterval;
+		return this;
+	}
+
+	public CommandClient setCommitRows(long commitRows)
+	{
+		this.commitRows = commitRows;
+		return this;
+	}
+
 	public CommandClient setConcurrency(int conc)
 	{
 		this.conc = conc;
 		return this;
 	}
 
+	public CommandClient setConcurrencyInterval(long concInterval)
+	{
+		this.concInterval = concInterval;
+		return this;
+	}
+
+	public CommandClient setConcurrencyMax(int concMax)
+	{
+		this.concMax = concMax;
+		return this;
+	}
+
+	public CommandClient setConcurrencyMin(int concMin)
+	{
+		this.concMin = concMin;
+		return this;
+	}
+
 	public CommandClient setDataBase(DataBase db)
 	{
 		this.dataBase = db;
@@ -1019,7 +1508,7 @@ public class CommandClient
 				switch (CommandClient.this.getRebalance())
 				{
 					case REBALANCE_PICKONE:
-						return DataBase.randomPickone(this.url);
+						return failover.pickone(this.url);
 
 					case REBALANCE_REARRANGE:
 						return DataBase.randomRearrange(this.url);
@@ -1028,15 +1517,49 @@ public class CommandClient
 						return this.url;
 				}
 			}
+
+			@Override
+			public Connection newConnection() throws SQLException
+			{
+				try
+				{
+					Connection conn = super.newConnection();
+					failover.reportUp();
+					return conn;
+				}
+				catch (SQLException e)
+				{
+					failover.reportDown();
+					throw e;
+				}
+			}
 		});
 	}
 
+	public CommandClient setDateFormat(String dateFormat)
+	{
+		this.dateFormat = Tools.isNullOrWhite(dateFormat) ? null : dateFormat;
+		return this;
+	}
+
+	public CommandClient setDeferIndex(boolean deferIndex)
+	{
+		this.deferIndex = deferIndex;
+		return this;
+	}
+
 	protected CommandClient setDelimiter(String delimiter)
 	{
 		this.delimiter = Tools.isNullOrWhite(delimiter) ? DEFAULT_DELIMITER : delimiter.trim();
 		return this;
 	}
 
+	public CommandClient setDialect(LoadDialect dialect)
+	{
+		this.dialect = dialect;
+		return this;
+	}
+
 	protected CommandClient setDict(Map<String, Map<String, String>> dict)
 	{
 		this.dict = dict;
@@ -1081,6 +1604,18 @@ public class CommandClient
 		return this;
 	}
 
+	public CommandClient setDirectPath(boolean directPath)
+	{
+		this.directPath = directPath;
+		return this;
+	}
+
+	public CommandClient setEngine(String engine)
+	{
+		this.engine = Tools.isNullOrWhite(engine) ? null : engine.trim();
+		return this;
+	}
+
 	protected CommandClient setEntr(Entrance entr)
 	{
 		this.entr = entr;
@@ -1093,6 +1628,12 @@ public class CommandClient
 		return this;
 	}
 
+	public CommandClient setErrorClassifier(ErrorClassifier errorClassifier)
+	{
+		this.errorClassifier = errorClassifier;
+		return this;
+	}
+
 	protected CommandClient setExit(boolean exit)
 	{
 		this.exit = exit;
@@ -1111,18 +1652,54 @@ public class CommandClient
 		return this;
 	}
 
+	public CommandClient setIndexConcurrency(int indexConc)
+	{
+		this.indexConc = indexConc;
+		return this;
+	}
+
+	public CommandClient setInitSql(String initSql)
+	{
+		this.initSql = Tools.isNullOrWhite(initSql) ? null : initSql;
+		return this;
+	}
+
 	protected CommandClient setLink(String link)
 	{
 		this.link = link;
 		return this;
 	}
 
+	public CommandClient setMapFile(boolean mapFile)
+	{
+		this.mapFile = mapFile;
+		return this;
+	}
+
 	public CommandClient setOut(PrintWriter output)
 	{
 		this.out = output;
 		return this;
 	}
 
+	public CommandClient setParseBuffer(int parseBuffer)
+	{
+		this.parseBuffer = parseBuffer;
+		return this;
+	}
+
+	public CommandClient setPipeline(boolean pipeline)
+	{
+		this.pipeline = pipeline;
+		return this;
+	}
+
+	public CommandClient setPool(boolean pool)
+	{
+		this.pool = pool;
+		return this;
+	}
+
 	public CommandClient setQuiet(boolean silent)
 	{
 		this.quiet = silent;
@@ -1140,21 +1717,63 @@ public class CommandClient
 		return this;
 	}
 
+	public CommandClient setRetry(int retry)
+	{
+		this.retry = retry;
+		return this;
+	}
+
 	public CommandClient setRewriteBatch(boolean rewriteBatch)
 	{
 		this.rewriteBatch = rewriteBatch;
 		return this;
 	}
 
+	public CommandClient setRewriteBytes(long rewriteBytes)
+	{
+		this.rewriteBytes = rewriteBytes;
+		return this;
+	}
+
+	public CommandClient setRewriteChunked(boolean rewriteChunked)
+	{
+		this.rewriteChunked = rewriteChunked;
+		return this;
+	}
+
+	public CommandClient setRewriteParams(int rewriteParams)
+	{
+		this.rewriteParams = rewriteParams;
+		return this;
+	}
+
+	public CommandClient setSplit(int split)
+	{
+		this.split = split;
+		return this;
+	}
+
 	protected CommandClient setSuccess(boolean success)
 	{
 		this.success &= success;
 		return this;
 	}
 
+	public CommandClient setTypedBind(boolean typedBind)
+	{
+		this.typedBind = typedBind;
+		return this;
+	}
+
 	public CommandClient setUseRawCmd(boolean rawcmd)
 	{
 		this.useRawCmd = rawcmd;
 		return this;
 	}
+
+	public CommandClient setVirtualThread(boolean virtualThread)
+	{
+		this.virtualThread = virtualThread;
+		return this;
+	}
 }
@@ -0,0 +1,138 @@
+package org.kernelab.jdl;
+
+/**
+ * Decide the number of workers from the observed batch latency and throughput
+ * in an AIMD way. Each window adds one worker while the database keeps up,
+ * and retires a quarter of workers once the latency grows far beyond the best
+ * seen or the throughput drops after the last increase.
+ */
+public class ConcurrencyController
+{
+	public static final long	DEFAULT_INTERVAL	= 5000L;
+
+	/**
+	 * The ratio to the base latency beyond which the database is regarded as
+	 * saturated.
+	 */
+	public static final double	SATURATION			= 2.0;
+
+	/**
+	 * The ratio which the base latency would drift upward in each window, so
+	 * that an old best would not hold back the controller forever.
+	 */
+	public static final double	DRIFT				= 1.05;
+
+	private int					min					= 1;
+
+	private int					max					= 1;
+
+	private long				interval			= DEFAULT_INTERVAL;
+
+	private long				since				= -1L;
+
+	private long				rows				= 0L;
+
+	private long				nanos				= 0L;
+
+	private int					batches				= 0;
+
+	private double				baseLatency			= -1.0;
+
+	private double				lastThroughput		= -1.0;
+
+	private int					lastDirection		= 0;
+
+	/**
+	 * Record a batch loaded and tell the number of workers expected.
+	 *
+	 * @param current
+	 *            the number of workers now.
+	 * @param rows
+	 *            the number of rows in the batch.
+	 * @param elapsed
+	 *            the nanoseconds spent on the batch.
+	 * @return the number of workers expected.
+	 */
+	public int adjust(int current, int rows, long elapsed)
+	{
+		long now = System.nanoTime();
+
+		if (since < 0)
+		{
+			since = now;
+		}
+
+		this.rows += rows;
+		this.nanos += elapsed;
+		this.batches++;
+
+		long window = now - since;
+		if (window < interval * 1000000L)
+		{
+			return current;
+		}
+
+		double throughput = this.rows * 1e9 / window;
+		double latency = (double) this.nanos / this.batches;
+
+		this.since = now;
+		this.rows = 0L;
+		this.nanos = 0L;
+		this.batches = 0;
+
+		if (baseLatency < 0 || latency < baseLatency)
+		{
+			baseLatency = latency;
+		}
+
+		int target = current;
+		if (latency > baseLatency * SATURATION || (lastDirection > 0 && throughput < lastThroughput * 0.95))
+		{
+			target = current - Math.max(1, current / 4);
+		}
+		else
+		{
+			target = current + 1;
+		}
+		target = Math.max(min, Math.min(max, target));
+
+		lastDirection = Integer.signum(target - current);
+		lastThroughput = throughput;
+		baseLatency *= DRIFT;
+
+		return target;
+	}
+
+	public long getInterval()
+	{
+		return interval;
+	}
+
+	public int getMax()
+	{
+		return max;
+	}
+
+	public int getMin()
+	{
+		return min;
+	}
+
+	public ConcurrencyController setInterval(long interval)
+	{
+		this.interval = Math.max(interval, 1L);
+		return this;
+	}
+
+	public ConcurrencyController setMax(int max)
+	{
+		this.max = Math.max(max, 1);
+		return this;
+	}
+
+	public ConcurrencyController setMin(int min)
+	{
+		this.min = Math.max(min, 1);
+		return this;
+	}
+}
@@ -0,0 +1,110 @@
+package org.kernelab.jdl;
+
+import java.util.Random;
+
+/**
+ * Track the health of one connection so that it would be validated only after
+ * it has been idle for a while or an error occurred on it, instead of on every
+ * use. Reconnecting is delayed by exponential backoff with jitter.
+ */
+public class ConnectionHealth
+{
+	public static final int		VALIDATE_TIMEOUT	= 5;
+
+	public static final long	DEFAULT_IDLE		= 10000L;
+
+	public static final long	BACKOFF_BASE		= 200L;
+
+	public static final long	BACKOFF_MAX			= 10000L;
+
+	private static final Random	RANDOM				= new Random();
+
+	/**
+	 * Get the delay in milliseconds before the given attempt, which doubles on
+	 * each attempt up to the max, and half of which is random so that the
+	 * workers would not retry all at once.
+	 */
+	public static long backoff(int attempt, long base, long max)
+	{
+		long delay = base << Math.min(Math.max(attempt, 0), 30);
+		delay = Math.max(Math.min(delay, max), 1L);
+		long half = delay / 2;
+		synchronized (RANDOM)
+		{
+			return half + (long) (RANDOM.nextDouble() * (delay - half));
+		}
+	}
+
+	public static void sleep(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e)
+		{
+		}
+	}
+
+	private long	idle		= DEFAULT_IDLE;
+
+	private long	touched		= 0L;
+
+	private boolean	suspect		= false;
+
+	private int		failures	= 0;
+
+	/**
+	 * Wait before the next attempt of connecting after a failure.
+	 */
+	public void backoff()
+	{
+		sleep(backoff(failures++, BACKOFF_BASE, BACKOFF_MAX));
+	}
+
+	/**
+	 * Report a new connection was established.
+	 */
+	public void connected()
+	{
+		this.failures = 0;
+		this.touch();
+	}
+
+	public long getIdle()
+	{
+		return idle;
+	}
+
+	/**
+	 * Tell whether the connection should be validated before use.
+	 */
+	public boolean isNeedValidate()
+	{
+		return suspect || System.currentTimeMillis() - touched > idle;
+	}
+
+	public ConnectionHealth setIdle(long idle)
+	{
+		this.idle = idle;
+		return this;
+	}
+
+	/**
+	 * Report an error occurred on the connection, it would be validated before
+	 * the next use.
+	 */
+	public void suspect()
+	{
+		this.suspect = true;
+	}
+
+	/**
+	 * Report the connection was found alive.
+	 */
+	public void touch()
+	{
+		this.touched = System.currentTimeMillis();
+		this.suspect = false;
+	}
+}
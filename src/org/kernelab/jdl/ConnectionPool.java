@@ -0,0 +1,257 @@
+package org.kernelab.jdl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kernelab.basis.sql.DataBase;
+
+/**
+ * A pool of connections to one link which keeps the connections returned
+ * instead of closing them, so that the LOAD DATA commands and SQL statements
+ * run one after another would not connect again and again. New connections
+ * are opened outside of the lock so that several workers could connect in
+ * parallel.
+ */
+public class ConnectionPool
+{
+	private final Lock				lock				= new ReentrantLock();
+
+	private final DataBase			dataBase;
+
+	private LinkedList<Connection>	idle				= new LinkedList<Connection>();
+
+	private boolean					closed				= false;
+
+	public ConnectionPool(DataBase dataBase)
+	{
+		this.dataBase = dataBase;
+	}
+
+	/**
+	 * Close all the idle connections, the connections given back afterwards
+	 * would be closed as well.
+	 */
+	public void close()
+	{
+		List<Connection> conns = new LinkedList<Connection>();
+
+		lock.lock();
+		try
+		{
+			this.closed = true;
+			conns.addAll(this.idle);
+			this.idle.clear();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		for (Connection conn : conns)
+		{
+			closeQuietly(conn);
+		}
+	}
+
+	protected static void closeQuietly(Connection conn)
+	{
+		try
+		{
+			conn.close();
+		}
+		catch (SQLException e)
+		{
+		}
+	}
+
+	public DataBase getDataBase()
+	{
+		return dataBase;
+	}
+
+	/**
+	 * Give back a connection to the pool. Anything uncommitted would be rolled
+	 * back and the auto commit would be turned on again. The connection which
+	 * could not be reset is closed.
+	 */
+	public void give(Connection conn)
+	{
+		if (conn == null)
+		{
+			return;
+		}
+
+		try
+		{
+			if (conn.isClosed())
+			{
+				return;
+			}
+			if (!conn.getAutoCommit())
+			{
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e)
+		{
+			closeQuietly(conn);
+			return;
+		}
+
+		lock.lock();
+		try
+		{
+			if (!this.closed)
+			{
+				this.idle.addFirst(conn);
+				return;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		closeQuietly(conn);
+	}
+
+	public int idles()
+	{
+		lock.lock();
+		try
+		{
+			return this.idle.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	protected Connection poll()
+	{
+		lock.lock();
+		try
+		{
+			return this.idle.pollFirst();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take a valid connection from the pool, or open a new one if no idle
+	 * connection is valid.
+	 */
+	public Connection take() throws SQLException
+	{
+		Connection conn = null;
+
+		while ((conn = this.poll()) != null)
+		{
+			try
+			{
+				if (conn.isValid(ConnectionHealth.VALIDATE_TIMEOUT))
+				{
+					return conn;
+				}
+			}
+			catch (SQLException e)
+			{
+			}
+			closeQuietly(conn);
+		}
+
+		return this.getDataBase().newConnection();
+	}
+
+	/**
+	 * Open connections in parallel until the given number of connections are
+	 * idle in the pool.
+	 */
+	public ConnectionPool warm(int size) throws SQLException
+	{
+		return this.warm(size, Executors.defaultThreadFactory());
+	}
+
+	/**
+	 * Open connections in parallel until the given number of connections are
+	 * idle in the pool. One connection is opened by the calling thread and
+	 * the others by the threads of the given factory. The failures are thrown
+	 * after all threads ended, chained as the next exceptions.
+	 */
+	public ConnectionPool warm(int size, ThreadFactory factory) throws SQLException
+	{
+		int more = size - this.idles();
+		if (more <= 0)
+		{
+			return this;
+		}
+
+		final List<SQLException> errors = new LinkedList<SQLException>();
+
+		Runnable open = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					give(getDataBase().newConnection());
+				}
+				catch (SQLException e)
+				{
+					synchronized (errors)
+					{
+						errors.add(e);
+					}
+				}
+			}
+		};
+
+		List<Thread> threads = new LinkedList<Thread>();
+		for (int i = 1; i < more; i++)
+		{
+			Thread t = factory.newThread(open);
+			t.start();
+			threads.add(t);
+		}
+
+		open.run();
+
+		for (Thread t : threads)
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		synchronized (errors)
+		{
+			if (!errors.isEmpty())
+			{
+				SQLException err = errors.get(0);
+				for (SQLException e : errors.subList(1, errors.size()))
+				{
+					err.setNextException(e);
+				}
+				throw err;
+			}
+		}
+
+		return this;
+	}
+}
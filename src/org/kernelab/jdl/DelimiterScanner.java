@@ -0,0 +1,103 @@
+package org.kernelab.jdl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Find the candidates of column or record terminator by their head. The full
+ * terminator should be verified by the caller on each candidate.<br />
+ * Bytes are scanned 8 at a time within a long word (SWAR), chars are scanned
+ * in a plain loop which is simple enough to be unrolled by the JIT.
+ */
+public class DelimiterScanner
+{
+	protected static final long	ONES	= 0x0101010101010101L;
+
+	protected static final long	HIGHS	= 0x8080808080808080L;
+
+	/**
+	 * Mark the high bit of each zero byte in the word. The lowest marked byte
+	 * is always a real zero byte while the higher ones might not.
+	 */
+	protected static long zeros(long word)
+	{
+		return (word - ONES) & ~word & HIGHS;
+	}
+
+	protected static long spread(byte b)
+	{
+		return (b & 0xffL) * ONES;
+	}
+
+	/**
+	 * Find the first index in [from, to) of the buffer whose byte equals x or
+	 * y.
+	 *
+	 * @return the index found or -1 if not found.
+	 */
+	public static int indexOf(ByteBuffer buff, int from, int to, byte x, byte y)
+	{
+		int i = from;
+
+		if (to - from >= 16)
+		{
+			ByteOrder order = buff.order();
+			if (order != ByteOrder.LITTLE_ENDIAN)
+			{
+				buff.order(ByteOrder.LITTLE_ENDIAN);
+			}
+			try
+			{
+				long xs = spread(x), ys = spread(y), word = 0L, hits = 0L;
+				for (; i <= to - 8; i += 8)
+				{
+					word = buff.getLong(i);
+					hits = zeros(word ^ xs) | zeros(word ^ ys);
+					if (hits != 0L)
+					{
+						return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+					}
+				}
+			}
+			finally
+			{
+				if (order != ByteOrder.LITTLE_ENDIAN)
+				{
+					buff.order(order);
+				}
+			}
+		}
+
+		byte b = 0;
+		for (; i < to; i++)
+		{
+			b = buff.get(i);
+			if (b == x || b == y)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Find the first index in [from, to) of the array whose char equals x or
+	 * y.
+	 *
+	 * @return the index found or -1 if not found.
+	 */
+	public static int indexOf(char[] buff, int from, int to, char x, char y)
+	{
+		char c = 0;
+		for (int i = from; i < to; i++)
+		{
+			c = buff[i];
+			if (c == x || c == y)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
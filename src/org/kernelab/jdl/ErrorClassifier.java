@@ -0,0 +1,13 @@
+package org.kernelab.jdl;
+
+import java.sql.SQLException;
+
+/**
+ * Tell the transient errors, such as deadlocks, lock wait timeouts,
+ * serialization failures and dropped connections, from the data errors. A
+ * batch failed for a transient error would be retried as a whole.
+ */
+public interface ErrorClassifier
+{
+	public boolean isTransient(SQLException err);
+}
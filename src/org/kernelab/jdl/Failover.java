@@ -0,0 +1,97 @@
+package org.kernelab.jdl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kernelab.basis.sql.DataBase;
+
+/**
+ * Remember the URLs picked from the rebalance list which failed to connect,
+ * so that the following connections would pick the other hosts until the
+ * failed one cools down.
+ */
+public class Failover
+{
+	public static final long			DEFAULT_COOLDOWN	= 30000L;
+
+	/**
+	 * The times to pick again when a failed URL was picked.
+	 */
+	public static final int				PICK_TRIES			= 8;
+
+	private final Map<String, Long>		downs				= new ConcurrentHashMap<String, Long>();
+
+	private final ThreadLocal<String>	picked				= new ThreadLocal<String>();
+
+	private long						cooldown			= DEFAULT_COOLDOWN;
+
+	public long getCooldown()
+	{
+		return cooldown;
+	}
+
+	protected boolean isDown(String url)
+	{
+		Long since = downs.get(url);
+		if (since == null)
+		{
+			return false;
+		}
+		if (System.currentTimeMillis() - since > cooldown)
+		{
+			downs.remove(url);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pick one URL from the list randomly, avoiding those failed recently.
+	 */
+	public String pickone(String url)
+	{
+		String pick = null;
+		for (int i = 0; i < PICK_TRIES; i++)
+		{
+			pick = DataBase.randomPickone(url);
+			if (!this.isDown(pick))
+			{
+				break;
+			}
+		}
+		picked.set(pick);
+		return pick;
+	}
+
+	/**
+	 * Report the URL picked by current thread failed to connect.
+	 */
+	public void reportDown()
+	{
+		String pick = picked.get();
+		if (pick != null)
+		{
+			downs.put(pick, System.currentTimeMillis());
+			picked.remove();
+		}
+	}
+
+	/**
+	 * Report the URL picked by current thread connected.
+	 */
+	public void reportUp()
+	{
+		String pick = picked.get();
+		if (pick != null)
+		{
+			downs.remove(pick);
+			picked.remove();
+		}
+	}
+
+	public Failover setCooldown(long cooldown)
+	{
+		this.cooldown = cooldown;
+		return this;
+	}
+}
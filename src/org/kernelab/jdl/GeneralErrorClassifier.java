@@ -0,0 +1,76 @@
+package org.kernelab.jdl;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classify the errors by the standard SQLState classes and a few vendor codes
+ * of the common databases. Extend it for a database which reports its
+ * transient errors otherwise.
+ */
+public class GeneralErrorClassifier implements ErrorClassifier
+{
+	/**
+	 * The SQLState classes of connection exceptions and transaction rollbacks.
+	 */
+	protected static final Set<String>	TRANSIENT_CLASSES	= new HashSet<String>(Arrays.asList("08", "40"));
+
+	/**
+	 * The SQLStates of lock timeouts, server shutdown and the like.
+	 */
+	protected static final Set<String>	TRANSIENT_STATES	= new HashSet<String>(
+			Arrays.asList("55P03", "57P01", "57P02", "57P03", "HYT00", "HYT01"));
+
+	/**
+	 * The vendor codes of MySQL (1205 lock wait timeout, 1213 deadlock, 2006
+	 * server gone away, 2013 lost connection), SQL Server (1205 deadlock
+	 * victim, 1222 lock request timeout) and Oracle (8177 serialization
+	 * failure, 17002 IO error).
+	 */
+	protected static final Set<Integer>	TRANSIENT_CODES		= new HashSet<Integer>(
+			Arrays.asList(1205, 1213, 1222, 2006, 2013, 8177, 17002));
+
+	@Override
+	public boolean isTransient(SQLException err)
+	{
+		Throwable t = err;
+		int depth = 0;
+		while (t != null && depth++ < 16)
+		{
+			if (t instanceof SQLException && this.isTransientOne((SQLException) t))
+			{
+				return true;
+			}
+			if (t instanceof SQLException && ((SQLException) t).getNextException() != null)
+			{
+				t = ((SQLException) t).getNextException();
+			}
+			else
+			{
+				t = t.getCause();
+			}
+		}
+		return false;
+	}
+
+	protected boolean isTransientOne(SQLException err)
+	{
+		if (err instanceof SQLTransientException || err instanceof SQLRecoverableException)
+		{
+			return true;
+		}
+
+		String state = err.getSQLState();
+		if (state != null && state.length() >= 2
+				&& (TRANSIENT_CLASSES.contains(state.substring(0, 2)) || TRANSIENT_STATES.contains(state)))
+		{
+			return true;
+		}
+
+		return TRANSIENT_CODES.contains(err.getErrorCode());
+	}
+}
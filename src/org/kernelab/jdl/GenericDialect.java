@@ -0,0 +1,97 @@
+package org.kernelab.jdl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The dialect which works for any database by JDBC batch or by multi-row
+ * insert if rewriteBatch is enabled.
+ */
+public class GenericDialect extends LoadDialect
+{
+	/**
+	 * Load by JDBC batch of the single row insert.
+	 */
+	public static class BatchEngine extends TransactionEngine
+	{
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			PreparedStatement ps = worker.ensureStatement();
+			try
+			{
+				ps.clearBatch();
+
+				int[] index = template.getIndexes();
+
+				for (Record record : records)
+				{
+					worker.addBatch(ps, index, record);
+				}
+
+				ps.executeBatch();
+
+				return 0;
+			}
+			finally
+			{
+				if (ps != null && ps != worker.getStatement())
+				{
+					try
+					{
+						ps.close();
+					}
+					catch (Exception e)
+					{
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Load by the multi-row insert.
+	 */
+	public static class RewriteEngine implements LoadEngine
+	{
+		@Override
+		public void close()
+		{
+		}
+
+		@Override
+		public int[] load(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+		{
+			return worker.doBatchRewrite(conn, template, records);
+		}
+	}
+
+	public static final String	ENGINE_BATCH	= "batch";
+
+	public static final String	ENGINE_REWRITE	= "rewrite";
+
+	@Override
+	public boolean accepts(String url)
+	{
+		return true;
+	}
+
+	/**
+	 * Create the engine named by the engine setting, which is batch or
+	 * rewrite. If not named, the rewrite engine is used if rewriteBatch is
+	 * enabled, otherwise the batch one.
+	 */
+	@Override
+	public LoadEngine newEngine(LoadMaster master)
+	{
+		String engine = master.getEngine();
+		if (ENGINE_REWRITE.equalsIgnoreCase(engine) || (!ENGINE_BATCH.equalsIgnoreCase(engine) && master.isRewriteBatch()))
+		{
+			return new RewriteEngine();
+		}
+		return new BatchEngine();
+	}
+}
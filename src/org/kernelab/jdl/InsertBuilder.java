@@ -49,6 +49,7 @@ public class InsertBuilder
 		}
 
 		List<Integer> idx = new LinkedList<Integer>();
+		List<String> params = new LinkedList<String>();
 		StringBuilder cols = new StringBuilder();
 		StringBuilder vals = new StringBuilder();
 		Object val = null;
@@ -64,6 +65,7 @@ public class InsertBuilder
 			if (val instanceof Integer)
 			{
 				idx.add((Integer) val);
+				params.add(pair.getKey());
 				if (vals.length() > 0)
 				{
 					vals.append(',');
@@ -79,15 +81,21 @@ public class InsertBuilder
 				}
 				vals.append((String) find[0]);
 				idx.addAll((List<Integer>) find[1]);
+				for (int i = 0; i < ((List<Integer>) find[1]).size(); i++)
+				{
+					params.add(null);
+				}
 			}
 		}
 
 		return new InsertTemplate() //
 				.setItems(this.getLoadItems()) //
+				.setSets(this.getSetExprs()) //
 				.setTable(this.getTable()) //
 				.setTarget(cols.toString()) //
 				.setValues(vals.toString()) //
 				.setIndexes(idx) //
+				.setColumns(params.toArray(new String[params.size()])) //
 		;
 	}
 
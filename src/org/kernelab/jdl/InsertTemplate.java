@@ -1,20 +1,55 @@
 package org.kernelab.jdl;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 public class InsertTemplate
 {
-	private String[]	items;
+	/**
+	 * The most multi-row inserts memoized, the least recently used one is
+	 * discarded beyond.
+	 */
+	protected static final int		INSERTS_CACHE_SIZE	= LoadWorker.REWRITE_CACHE_SIZE;
 
-	private String		table;
+	private String[]				items;
 
-	private String		target;
+	private String					table;
 
-	private String		values;
+	private String					target;
 
-	private String		insert;
+	private String					values;
 
-	private int[]		indexes;
+	private String					insert;
+
+	private int[]					indexes;
+
+	/**
+	 * The target column of each parameter, null if the parameter is inside an
+	 * expression.
+	 */
+	private String[]				columns;
+
+	private Map<String, String>		sets;
+
+	private Map<Integer, String>	inserts				= Collections
+			.synchronizedMap(new LinkedHashMap<Integer, String>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Entry<Integer, String> eldest)
+				{
+					return this.size() > INSERTS_CACHE_SIZE;
+				}
+			});
+
+	public String[] getColumns()
+	{
+		return columns;
+	}
 
 	public int[] getIndexes()
 	{
@@ -30,7 +65,22 @@ public class InsertTemplate
 		return insert;
 	}
 
+	/**
+	 * Get the multi-row insert of the given rows, which is memoized for the
+	 * recently used sizes.
+	 */
 	public String getInsert(int rows)
+	{
+		String insert = inserts.get(rows);
+		if (insert == null)
+		{
+			insert = this.newInsert(rows);
+			inserts.put(rows, insert);
+		}
+		return insert;
+	}
+
+	protected String newInsert(int rows)
 	{
 		String head = "INSERT INTO " + this.getTable() + " (" + this.getTarget() + ") VALUES";
 
@@ -61,6 +111,14 @@ public class InsertTemplate
 		return items;
 	}
 
+	/**
+	 * Get the SET expressions of columns, null if none.
+	 */
+	public Map<String, String> getSets()
+	{
+		return sets;
+	}
+
 	public String getTable()
 	{
 		return table;
@@ -76,6 +134,12 @@ public class InsertTemplate
 		return values;
 	}
 
+	protected InsertTemplate setColumns(String[] columns)
+	{
+		this.columns = columns;
+		return this;
+	}
+
 	protected InsertTemplate setIndexes(int[] indexes)
 	{
 		this.indexes = indexes;
@@ -105,10 +169,17 @@ public class InsertTemplate
 		return this;
 	}
 
+	protected InsertTemplate setSets(Map<String, String> sets)
+	{
+		this.sets = sets;
+		return this;
+	}
+
 	protected InsertTemplate setTable(String table)
 	{
 		this.table = table;
 		this.insert = null;
+		this.inserts.clear();
 		return this;
 	}
 
@@ -116,6 +187,7 @@ public class InsertTemplate
 	{
 		this.target = target;
 		this.insert = null;
+		this.inserts.clear();
 		return this;
 	}
 
@@ -123,6 +195,7 @@ public class InsertTemplate
 	{
 		this.values = values;
 		this.insert = null;
+		this.inserts.clear();
 		return this;
 	}
 }
@@ -5,7 +5,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,6 +20,16 @@ import org.kernelab.basis.Variable;
 
 public class LoadBuilder
 {
+	/**
+	 * The clauses of SQL to run around the loading, which are given at the
+	 * end of the command as INIT SQL '...', BEFORE SQL '...' or AFTER SQL
+	 * '...', the quote in which is written as two quotes. BEFORE and AFTER
+	 * SQL run on connections of their own, so they must not rely on the
+	 * session state.
+	 */
+	protected static final Pattern	REGEX_HOOK	= Pattern.compile("\\s+(INIT|BEFORE|AFTER)\\s+SQL\\s+'((?:[^']|'')*)'\\s*$",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
 	public static String restoreText(String text)
 	{
 		if (Tools.notNullOrEmpty(text))
@@ -57,6 +71,53 @@ public class LoadBuilder
 		}
 	}
 
+	/**
+	 * Split the text into statements by the semicolons which are not quoted.
+	 * The blank statements are skipped.
+	 */
+	public static List<String> splitSql(String text)
+	{
+		List<String> sqls = new LinkedList<String>();
+		if (text == null)
+		{
+			return sqls;
+		}
+
+		boolean quoted = false;
+		int from = 0;
+		char c = 0;
+		for (int i = 0; i <= text.length(); i++)
+		{
+			c = i < text.length() ? text.charAt(i) : ';';
+			if (c == '\'')
+			{
+				quoted = !quoted;
+			}
+			else if (c == ';' && (!quoted || i == text.length()))
+			{
+				String sql = text.substring(from, i).trim();
+				if (sql.length() > 0)
+				{
+					sqls.add(sql);
+				}
+				from = i + 1;
+			}
+		}
+		return sqls;
+	}
+
+	protected static boolean startWith(byte[] a, int from, byte[] b)
+	{
+		for (int i = 0; i < b.length; i++)
+		{
+			if (a[i + from] != b[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private String				filePath;
 
 	private String				table;
@@ -73,16 +134,81 @@ public class LoadBuilder
 
 	private Map<String, String>	setMap;
 
+	private int					bufferSize	= RecordParser.DEFAULT_BUFFER_SIZE;
+
+	private boolean[]			columnsUsed;
+
+	private List<String>		initSql		= new LinkedList<String>();
+
+	private List<String>		beforeSql	= new LinkedList<String>();
+
+	private List<String>		afterSql	= new LinkedList<String>();
+
 	public RecordParser buildParser() throws IOException
 	{
-		InputStream is = new FileInputStream(new File(this.getFilePath()));
-		return new RecordParser() //
-				.setReader(new InputStreamReader(is, this.getCharset())) //
-				.setColumnTerminator(this.getColumnTerminator()) //
-				.setRecordTerminator(this.getRecordTerminator()) //
-				.setColumnsNeed(this.getItemList().length) //
-				.setSkip(this.getSkip() != null ? this.getSkip() : 0) //
-		;
+		return this.buildParser(new FileInputStream(new File(this.getFilePath())), true);
+	}
+
+	protected RecordParser buildParser(File file, long start, long end, boolean head, boolean mapped)
+			throws IOException
+	{
+		if (mapped && MappedRecordParser.isSupported(Charset.forName(this.getCharset())))
+		{
+			return this.config(new MappedRecordParser() //
+					.setCharset(this.getCharset()) //
+					.setFile(file, start, end), head);
+		}
+		else
+		{
+			return this.buildParser(new RangeInputStream(file, start, end), head);
+		}
+	}
+
+	protected RecordParser buildParser(InputStream is, boolean head) throws IOException
+	{
+		return this.config(new RecordParser() //
+				.setBufferSize(this.getBufferSize()) //
+				.setReader(new InputStreamReader(is, this.getCharset())), head);
+	}
+
+	/**
+	 * Build parsers over the byte ranges of the input file. Each range ends
+	 * right after a record terminator so that every record belongs to exactly
+	 * one range. The IGNORE clause only applies to the first range.
+	 * 
+	 * @param split
+	 *            the number of ranges expected.
+	 * @param mapped
+	 *            whether to parse the ranges by MappedRecordParser, which is
+	 *            not used if the charset is not supported by it.
+	 */
+	public List<RecordParser> buildParsers(int split, boolean mapped) throws IOException
+	{
+		List<RecordParser> parsers = new LinkedList<RecordParser>();
+
+		File file = new File(this.getFilePath());
+
+		if (split <= 1)
+		{
+			if (mapped)
+			{
+				parsers.add(this.buildParser(file, 0L, file.length(), true, true));
+			}
+			else
+			{
+				parsers.add(this.buildParser());
+			}
+			return parsers;
+		}
+
+		long[] bounds = this.splitRanges(file, this.getRecordTerminator().getBytes(this.getCharset()), split);
+
+		for (int i = 0; i < bounds.length - 1; i++)
+		{
+			parsers.add(this.buildParser(file, bounds[i], bounds[i + 1], i == 0, mapped).setRange(i + 1, bounds[i]));
+		}
+
+		return parsers;
 	}
 
 	protected Map<String, String> buildSetMap(String setList)
@@ -123,6 +249,17 @@ public class LoadBuilder
 				.build();
 	}
 
+	protected RecordParser config(RecordParser parser, boolean head)
+	{
+		return parser //
+				.setColumnTerminator(this.getColumnTerminator()) //
+				.setRecordTerminator(this.getRecordTerminator()) //
+				.setColumnsNeed(this.getItemList().length) //
+				.setColumnsUsed(this.getColumnsUsed()) //
+				.setSkip(head && this.getSkip() != null ? this.getSkip() : 0) //
+		;
+	}
+
 	protected String[] extract(String cmd, String regex, String replace)
 	{
 		Matcher m = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL).matcher(cmd);
@@ -136,11 +273,50 @@ public class LoadBuilder
 				m.reset(m.group()).replaceFirst(replace) };
 	}
 
+	/**
+	 * Get the SQL to run after all records loaded.
+	 */
+	public List<String> getAfterSql()
+	{
+		return afterSql;
+	}
+
+	/**
+	 * Get the SQL to run before any record loaded.
+	 */
+	public List<String> getBeforeSql()
+	{
+		return beforeSql;
+	}
+
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
 	protected String getCharset()
 	{
 		return charset;
 	}
 
+	/**
+	 * Get the items which are bound by the template, other items are never
+	 * copied out by the parser.
+	 */
+	protected boolean[] getColumnsUsed()
+	{
+		if (columnsUsed == null)
+		{
+			boolean[] used = new boolean[this.getItemList().length];
+			for (int index : this.buildTemplate().getIndexes())
+			{
+				used[index] = true;
+			}
+			columnsUsed = used;
+		}
+		return columnsUsed;
+	}
+
 	protected String getColumnTerminator()
 	{
 		return columnTerminator;
@@ -151,6 +327,14 @@ public class LoadBuilder
 		return filePath;
 	}
 
+	/**
+	 * Get the SQL to run on each connection of the workers.
+	 */
+	public List<String> getInitSql()
+	{
+		return initSql;
+	}
+
 	protected String[] getItemList()
 	{
 		return itemList;
@@ -183,6 +367,8 @@ public class LoadBuilder
 
 	public LoadBuilder resolve(String cmd)
 	{
+		cmd = this.resolveHooks(cmd);
+
 		String[] res = extract(cmd, "^\\s*LOAD\\s+DATA\\s+LOCAL\\s+INFILE\\s+'(.+?)'\\s+", "$1");
 
 		String filePath = res[1];
@@ -256,6 +442,73 @@ public class LoadBuilder
 		return this;
 	}
 
+	/**
+	 * Take the SQL clauses off the end of the command.
+	 */
+	protected String resolveHooks(String cmd)
+	{
+		this.getInitSql().clear();
+		this.getBeforeSql().clear();
+		this.getAfterSql().clear();
+
+		Matcher m = null;
+		while ((m = REGEX_HOOK.matcher(cmd)).find())
+		{
+			List<String> sqls = splitSql(m.group(2).replace("''", "'"));
+			String hook = m.group(1).toUpperCase();
+			if ("INIT".equals(hook))
+			{
+				this.getInitSql().addAll(0, sqls);
+			}
+			else if ("BEFORE".equals(hook))
+			{
+				this.getBeforeSql().addAll(0, sqls);
+			}
+			else
+			{
+				this.getAfterSql().addAll(0, sqls);
+			}
+			log(hook.toLowerCase() + "Sql: " + sqls);
+			cmd = cmd.substring(0, m.start());
+		}
+
+		return cmd;
+	}
+
+	protected long seekTerminator(RandomAccessFile file, long from, byte[] term) throws IOException
+	{
+		long length = file.length();
+		byte[] buff = new byte[Math.max(8192, term.length * 2)];
+
+		long pos = from;
+		int reads = -1;
+		while (pos < length)
+		{
+			file.seek(pos);
+			reads = file.read(buff, 0, (int) Math.min(buff.length, length - pos));
+			if (reads < term.length)
+			{
+				break;
+			}
+			for (int i = 0; i <= reads - term.length; i++)
+			{
+				if (startWith(buff, i, term))
+				{
+					return pos + i + term.length;
+				}
+			}
+			pos += reads - term.length + 1;
+		}
+
+		return length;
+	}
+
+	public LoadBuilder setBufferSize(int bufferSize)
+	{
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
 	protected void setCharset(String charset)
 	{
 		this.charset = charset;
@@ -274,6 +527,7 @@ public class LoadBuilder
 	protected void setItemList(String[] columnList)
 	{
 		this.itemList = columnList;
+		this.columnsUsed = null;
 	}
 
 	protected void setRecordTerminator(String recordTerminator)
@@ -284,6 +538,7 @@ public class LoadBuilder
 	protected void setSetMap(Map<String, String> setMap)
 	{
 		this.setMap = setMap;
+		this.columnsUsed = null;
 	}
 
 	protected void setSkip(Integer skip)
@@ -295,4 +550,44 @@ public class LoadBuilder
 	{
 		this.table = table;
 	}
+
+	/**
+	 * Split the file into at most the given number of ranges which are aligned
+	 * on the record terminator.
+	 * 
+	 * @return the bounds of ranges, range i is [bounds[i], bounds[i+1]).
+	 */
+	protected long[] splitRanges(File file, byte[] term, int split) throws IOException
+	{
+		List<Long> bounds = new LinkedList<Long>();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			long length = raf.length(), last = 0L, bound = 0L;
+			bounds.add(last);
+			for (int i = 1; i < split && last < length; i++)
+			{
+				bound = this.seekTerminator(raf, Math.max(length * i / split, last), term);
+				if (bound > last && bound < length)
+				{
+					bounds.add(bound);
+					last = bound;
+				}
+			}
+			bounds.add(length);
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		long[] result = new long[bounds.size()];
+		int i = 0;
+		for (Long b : bounds)
+		{
+			result[i++] = b;
+		}
+		return result;
+	}
 }
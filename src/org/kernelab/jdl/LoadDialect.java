@@ -0,0 +1,258 @@
+package org.kernelab.jdl;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The database specific ways of loading. A dialect is selected by the JDBC
+ * URL among those registered as services of this class in
+ * META-INF/services/org.kernelab.jdl.LoadDialect and the built-in ones, and
+ * the generic one is used if no dialect accepts the URL. The dialect also
+ * tells how to defer the secondary indexes of the target table.
+ */
+public abstract class LoadDialect
+{
+	private static List<LoadDialect> DIALECTS = null;
+
+	protected static synchronized List<LoadDialect> getDialects()
+	{
+		if (DIALECTS == null)
+		{
+			List<LoadDialect> dialects = new LinkedList<LoadDialect>();
+
+			Iterator<LoadDialect> iter = ServiceLoader.load(LoadDialect.class).iterator();
+			while (true)
+			{
+				try
+				{
+					if (!iter.hasNext())
+					{
+						break;
+					}
+					dialects.add(iter.next());
+				}
+				catch (Throwable e)
+				{
+				}
+			}
+
+			dialects.add(new PostgresDialect());
+			dialects.add(new MysqlDialect());
+			dialects.add(new OracleDialect());
+
+			DIALECTS = dialects;
+		}
+		return DIALECTS;
+	}
+
+	/**
+	 * Get the dialect which accepts the given URL, or the generic one.
+	 */
+	public static LoadDialect of(String url)
+	{
+		if (url != null)
+		{
+			for (LoadDialect dialect : getDialects())
+			{
+				if (dialect.accepts(url))
+				{
+					return dialect;
+				}
+			}
+		}
+		return new GenericDialect();
+	}
+
+	/**
+	 * Get the dialect of the given class name, or the one which accepts the
+	 * given URL if the class name is null.
+	 */
+	public static LoadDialect of(String cls, String url) throws Exception
+	{
+		return cls != null ? (LoadDialect) Class.forName(cls).newInstance() : of(url);
+	}
+
+	protected static void execute(Connection conn, String sql) throws SQLException
+	{
+		Statement st = conn.createStatement();
+		try
+		{
+			st.execute(sql);
+		}
+		finally
+		{
+			st.close();
+		}
+	}
+
+	/**
+	 * Tell whether this dialect works for the given JDBC URL.
+	 */
+	public abstract boolean accepts(String url);
+
+	/**
+	 * Get the DDL which drops or disables the index.
+	 */
+	public String deferIndexSql(SecondaryIndex index)
+	{
+		return "DROP INDEX " + index.getQualifiedName();
+	}
+
+	/**
+	 * Get the DDL which creates or enables the index again. The index is
+	 * created in the schema of the table.
+	 */
+	public String rebuildIndexSql(SecondaryIndex index)
+	{
+		if (index.getDefinition() != null)
+		{
+			return index.getDefinition();
+		}
+		StringBuilder buf = new StringBuilder();
+		buf.append("CREATE INDEX ").append(index.quote(index.getName())).append(" ON ").append(index.getTable())
+				.append(" (");
+		for (int i = 0; i < index.getColumns().size(); i++)
+		{
+			if (i > 0)
+			{
+				buf.append(", ");
+			}
+			buf.append(index.quote(index.getColumns().get(i)));
+			if (index.getDescends().get(i))
+			{
+				buf.append(" DESC");
+			}
+		}
+		return buf.append(')').toString();
+	}
+
+	/**
+	 * Drop or disable the index before loading.
+	 */
+	public void deferIndex(Connection conn, SecondaryIndex index) throws SQLException
+	{
+		execute(conn, this.deferIndexSql(index));
+	}
+
+	/**
+	 * Tell whether the index could be deferred and rebuilt by this dialect.
+	 */
+	protected boolean isDeferrable(SecondaryIndex index)
+	{
+		if (index.getColumns().isEmpty())
+		{
+			return false;
+		}
+		for (String column : index.getColumns())
+		{
+			if (column == null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * List the non-unique indexes of the table by
+	 * {@link DatabaseMetaData#getIndexInfo} which could be deferred. The
+	 * unique ones are kept since they check the records.
+	 */
+	public List<SecondaryIndex> listIndexes(Connection conn, String table) throws SQLException
+	{
+		DatabaseMetaData meta = conn.getMetaData();
+
+		String[] names = table.trim().split("\\s*\\.\\s*");
+		String name = ColumnBinder.identifier(meta, names[names.length - 1]);
+		String schema = names.length > 1 ? ColumnBinder.identifier(meta, names[names.length - 2]) : null;
+		String catalog = names.length > 2 ? ColumnBinder.identifier(meta, names[names.length - 3]) : null;
+
+		Map<String, SecondaryIndex> indexes = this.readIndexes(meta, catalog, schema, name, table);
+		if (indexes.isEmpty() && names.length == 2)
+		{
+			// Some databases such as MySQL take the qualifier as catalog.
+			indexes = this.readIndexes(meta, schema, null, name, table);
+		}
+
+		List<SecondaryIndex> list = new LinkedList<SecondaryIndex>();
+		for (SecondaryIndex index : indexes.values())
+		{
+			if (this.isDeferrable(index))
+			{
+				list.add(index);
+			}
+		}
+		return list;
+	}
+
+	protected Map<String, SecondaryIndex> readIndexes(DatabaseMetaData meta, String catalog, String schema,
+			String name, String table) throws SQLException
+	{
+		Map<String, SecondaryIndex> indexes = new LinkedHashMap<String, SecondaryIndex>();
+		Set<String> uniques = new HashSet<String>();
+
+		ResultSet rs = meta.getIndexInfo(catalog, schema, name, false, true);
+		if (rs == null)
+		{
+			return indexes;
+		}
+		try
+		{
+			String quote = meta.getIdentifierQuoteString();
+			String key = null;
+			SecondaryIndex index = null;
+			while (rs.next())
+			{
+				key = rs.getString("INDEX_NAME");
+				if (key == null || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic)
+				{
+					continue;
+				}
+				if (!rs.getBoolean("NON_UNIQUE"))
+				{
+					uniques.add(key);
+					continue;
+				}
+				index = indexes.get(key);
+				if (index == null)
+				{
+					index = new SecondaryIndex().setTable(table).setCatalog(rs.getString("TABLE_CAT"))
+							.setSchema(rs.getString("TABLE_SCHEM")).setName(key).setQuote(quote);
+					indexes.put(key, index);
+				}
+				index.addColumn(rs.getString("COLUMN_NAME"), "D".equalsIgnoreCase(rs.getString("ASC_OR_DESC")));
+			}
+		}
+		finally
+		{
+			rs.close();
+		}
+
+		indexes.keySet().removeAll(uniques);
+		return indexes;
+	}
+
+	/**
+	 * Create or enable the index again after loading.
+	 */
+	public void rebuildIndex(Connection conn, SecondaryIndex index) throws SQLException
+	{
+		execute(conn, this.rebuildIndexSql(index));
+	}
+
+	/**
+	 * Create the engine of a worker according to the settings of the master.
+	 */
+	public abstract LoadEngine newEngine(LoadMaster master);
+}
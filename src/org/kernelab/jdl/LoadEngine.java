@@ -0,0 +1,24 @@
+package org.kernelab.jdl;
+
+import java.sql.Connection;
+import java.util.List;
+
+/**
+ * The way a worker loads a batch of records into the database. Each worker
+ * has its own engine created by the dialect.
+ */
+public interface LoadEngine
+{
+	/**
+	 * Release what the engine keeps for the connection of the worker, which
+	 * is called before the connection is released or changed.
+	 */
+	public void close();
+
+	/**
+	 * Load the records and recover the failed ones.
+	 *
+	 * @return the number of records and the number of bad ones.
+	 */
+	public int[] load(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records);
+}
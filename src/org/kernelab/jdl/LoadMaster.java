@@ -1,14 +1,19 @@
 package org.kernelab.jdl;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -20,16 +25,84 @@ import org.kernelab.basis.sql.DataBase;
 
 public class LoadMaster implements Runnable
 {
-	private RecordParser			parser;
+	protected static final Method	OF_VIRTUAL;
+
+	protected static final Method	UNSTARTED;
+
+	static
+	{
+		Method ofVirtual = null, unstarted = null;
+		try
+		{
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		}
+		catch (Exception e)
+		{
+			ofVirtual = null;
+			unstarted = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		UNSTARTED = unstarted;
+	}
+
+	/**
+	 * Tell whether virtual threads are supported by the running JVM.
+	 */
+	public static boolean isVirtualThreadSupported()
+	{
+		return OF_VIRTUAL != null && UNSTARTED != null;
+	}
+
+	private List<RecordParser>		parsers;
 
 	private InsertTemplate			template;
 
 	private DataBase				dataBase;
 
+	/**
+	 * The pool which the connections are taken from and given back to, if null
+	 * the connections would be opened and closed for each load.
+	 */
+	private ConnectionPool			pool;
+
+	private ErrorClassifier			errorClassifier		= new GeneralErrorClassifier();
+
+	private LoadDialect				dialect				= new GenericDialect();
+
+	/**
+	 * The name of engine to load, null for the default one of the dialect.
+	 */
+	private String					engine				= null;
+
+	/**
+	 * Whether to insert by direct path if the dialect supports.
+	 */
+	private boolean					directPath			= false;
+
+	/**
+	 * Whether to bind the values by the types of target columns instead of
+	 * string.
+	 */
+	private boolean					typedBind			= false;
+
+	private String					dateFormat			= null;
+
+	private ColumnBinder[]			binders;
+
+	protected final Lock			bindLock			= new ReentrantLock();
+
+	/**
+	 * The most times to retry a batch which failed for a transient error.
+	 */
+	private int						retry				= CommandClient.DEFAULT_RETRY;
+
 	private long[]					result				= null;
 
 	protected final Lock			lock				= new ReentrantLock();
 
+	protected final Lock			connectLock			= new ReentrantLock();
+
 	protected final Condition		notReading			= lock.newCondition();
 
 	protected final Condition		untilEmptyWorkers	= lock.newCondition();
@@ -38,7 +111,9 @@ public class LoadMaster implements Runnable
 
 	protected final Condition		untilStopped		= lock.newCondition();
 
-	private boolean					reading				= false;
+	protected final Condition		notEmptyBatches		= lock.newCondition();
+
+	protected final Condition		notFullBatches		= lock.newCondition();
 
 	private boolean					ended				= false;
 
@@ -48,6 +123,27 @@ public class LoadMaster implements Runnable
 
 	private LinkedList<LoadWorker>	readyWorkers		= new LinkedList<LoadWorker>();
 
+	private LinkedList<RecordParser>	readyParsers		= new LinkedList<RecordParser>();
+
+	private int						remainParsers		= 0;
+
+	private LinkedList<RecordBatch>	readyBatches		= new LinkedList<RecordBatch>();
+
+	private LinkedList<RecordBatch>	freeBatches			= new LinkedList<RecordBatch>();
+
+	private int						totalBatches		= 0;
+
+	private ConcurrencyController	controller			= null;
+
+	private int						retiring			= 0;
+
+	/**
+	 * The workers which were told to retire but not destroyed yet.
+	 */
+	private Set<LoadWorker>			retired				= new LinkedHashSet<LoadWorker>();
+
+	private int						spawning			= 0;
+
 	private Map<String, Boolean>	workersReading		= new LinkedHashMap<String, Boolean>();
 
 	private PrintWriter				out					= new PrintWriter(CommandClient.writerOf(System.out), true);
@@ -58,38 +154,381 @@ public class LoadMaster implements Runnable
 
 	private int						batchSize			= CommandClient.DEFAULT_BATCH_SIZE;
 
+	private long					batchLatency		= 0L;
+
+	private int						batchSizeMin		= CommandClient.DEFAULT_BATCH_SIZE_MIN;
+
+	private int						batchSizeMax		= CommandClient.DEFAULT_BATCH_SIZE_MAX;
+
+	private volatile int			readBatchSize		= CommandClient.DEFAULT_BATCH_SIZE;
+
+	/**
+	 * The batch sizes tuned by each worker present.
+	 */
+	private Map<LoadWorker, Integer>	tunedSizes		= new LinkedHashMap<LoadWorker, Integer>();
+
+	/**
+	 * The number of batches loaded in one transaction, non-positive means not
+	 * limited by batches.
+	 */
+	private int						commitInterval		= 0;
+
+	/**
+	 * The number of rows loaded in one transaction, non-positive means not
+	 * limited by rows.
+	 */
+	private long					commitRows			= 0L;
+
 	private boolean					rewriteBatch		= CommandClient.DEFAULT_REWRITE_BATCH;
 
+	private boolean					rewriteChunked		= CommandClient.DEFAULT_REWRITE_CHUNKED;
+
+	/**
+	 * The most bind parameters in one rewrite statement, non-positive means
+	 * no limit.
+	 */
+	private int						rewriteParams		= CommandClient.DEFAULT_REWRITE_PARAMS;
+
+	/**
+	 * The most bytes estimated for one rewrite statement, non-positive means
+	 * no limit.
+	 */
+	private long					rewriteBytes		= CommandClient.DEFAULT_REWRITE_BYTES;
+
+	private boolean					pipeline			= CommandClient.DEFAULT_PIPELINE;
+
+	private boolean					virtualThread		= CommandClient.DEFAULT_VIRTUAL_THREAD;
+
 	private int						rebalance			= CommandClient.REBALANCE_NONE;
 
+	/**
+	 * The SQL to run on each connection of the workers, which is closed
+	 * instead of given back to the pool so that its session state would not
+	 * be taken by others.
+	 */
+	private List<String>			initSql				= null;
+
+	/**
+	 * The SQL to run before any worker starts, on a connection of its own
+	 * which is closed afterwards. So it must not rely on the session state.
+	 */
+	private List<String>			beforeSql			= null;
+
+	/**
+	 * The SQL to run after all workers drained, on a connection of its own
+	 * which is closed afterwards. So it must not rely on the session state.
+	 */
+	private List<String>			afterSql			= null;
+
+	/**
+	 * Whether to defer the secondary indexes of the target table until all
+	 * records are loaded.
+	 */
+	private boolean					deferIndex			= false;
+
+	/**
+	 * The number of connections to rebuild the indexes, 0 for the
+	 * concurrency.
+	 */
+	private int						indexConcurrency	= 0;
+
+	/**
+	 * The indexes deferred by this load which are to be rebuilt.
+	 */
+	private List<SecondaryIndex>	deferred			= new LinkedList<SecondaryIndex>();
+
+	/**
+	 * Close the parsers, including those left unread after the loading was
+	 * stopped, so that no file would be kept open.
+	 */
+	protected void closeParsers()
+	{
+		if (this.getParsers() != null)
+		{
+			for (RecordParser parser : this.getParsers())
+			{
+				parser.close();
+			}
+		}
+	}
+
+	/**
+	 * Adjust the concurrency by the controller, which is called under the
+	 * lock. The workers to be added are only counted as spawning here.
+	 * 
+	 * @return the number of workers to be started by spawnWorkers.
+	 */
+	protected int control(int rows, long elapsed)
+	{
+		if (this.getController() == null || this.ended)
+		{
+			return 0;
+		}
+
+		int current = this.workers.size() - this.retired.size() + this.spawning - this.retiring;
+		int target = this.getController().adjust(current, rows, elapsed);
+
+		if (target == current)
+		{
+			return 0;
+		}
+
+		log("concurrency " + current + " -> " + target);
+
+		if (target < current)
+		{
+			this.retiring += current - target;
+			return 0;
+		}
+
+		int cancel = Math.min(this.retiring, target - current);
+		this.retiring -= cancel;
+		this.spawning += target - current - cancel;
+
+		return target - current - cancel;
+	}
+
+	/**
+	 * Drop or disable the secondary indexes of the target table. The index
+	 * which could not be deferred is kept and reported. The definitions of
+	 * the deferred ones are saved and printed so that they could be restored
+	 * by hand if the process is killed.
+	 */
+	protected void deferIndexes()
+	{
+		if (!this.isDeferIndex())
+		{
+			return;
+		}
+
+		Connection conn = null;
+		try
+		{
+			conn = this.newConnection();
+			for (SecondaryIndex index : this.getDialect().listIndexes(conn, this.getTemplate().getTable()))
+			{
+				try
+				{
+					this.getDialect().deferIndex(conn, index);
+					if (!conn.getAutoCommit())
+					{
+						conn.commit();
+					}
+					this.deferred.add(index);
+					this.printOut("Deferred index " + index + ": " + this.getDialect().rebuildIndexSql(index));
+				}
+				catch (SQLException e)
+				{
+					this.printError(e);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			this.printError(e);
+		}
+		finally
+		{
+			if (conn != null)
+			{
+				this.releaseConnection(conn);
+			}
+		}
+	}
+
+	/**
+	 * Run the SQL by a connection which is closed afterwards, since the SQL
+	 * could have changed its session.
+	 */
+	protected void executeSql(List<String> sqls) throws SQLException
+	{
+		if (sqls == null || sqls.isEmpty())
+		{
+			return;
+		}
+
+		Connection conn = this.newConnection();
+		try
+		{
+			this.executeSql(conn, sqls);
+			if (!conn.getAutoCommit())
+			{
+				conn.commit();
+			}
+		}
+		finally
+		{
+			this.releaseConnection(conn, sqls);
+		}
+	}
+
+	protected void executeSql(Connection conn, List<String> sqls) throws SQLException
+	{
+		Statement st = conn.createStatement();
+		try
+		{
+			for (String sql : sqls)
+			{
+				st.execute(sql);
+			}
+		}
+		finally
+		{
+			st.close();
+		}
+	}
+
+	public List<String> getAfterSql()
+	{
+		return afterSql;
+	}
+
+	/**
+	 * The latency in milliseconds expected for each batch, workers would tune
+	 * their batch size toward it if it is positive.
+	 */
+	public long getBatchLatency()
+	{
+		return batchLatency;
+	}
+
 	public int getBatchSize()
 	{
 		return batchSize;
 	}
 
+	public int getBatchSizeMax()
+	{
+		return batchSizeMax;
+	}
+
+	public int getBatchSizeMin()
+	{
+		return batchSizeMin;
+	}
+
+	public List<String> getBeforeSql()
+	{
+		return beforeSql;
+	}
+
+	/**
+	 * Get the binders of parameters which are resolved by the first connection
+	 * asking for them. Return null if typedBind is disabled.
+	 */
+	protected ColumnBinder[] getBinders(Connection conn)
+	{
+		if (!this.isTypedBind())
+		{
+			return null;
+		}
+		bindLock.lock();
+		try
+		{
+			if (this.binders == null)
+			{
+				this.binders = ColumnBinder.resolve(conn, this.getTemplate(), this.getDateFormat());
+			}
+			return this.binders;
+		}
+		finally
+		{
+			bindLock.unlock();
+		}
+	}
+
+	public int getCommitInterval()
+	{
+		return commitInterval;
+	}
+
+	public long getCommitRows()
+	{
+		return commitRows;
+	}
+
 	public int getConcurrency()
 	{
 		return concurrency;
 	}
 
+	public ConcurrencyController getController()
+	{
+		return controller;
+	}
+
 	public DataBase getDataBase()
 	{
 		return dataBase;
 	}
 
+	public String getDateFormat()
+	{
+		return dateFormat;
+	}
+
+	public LoadDialect getDialect()
+	{
+		return dialect;
+	}
+
+	public String getEngine()
+	{
+		return engine;
+	}
+
 	protected PrintWriter getErr()
 	{
 		return err;
 	}
 
+	public ErrorClassifier getErrorClassifier()
+	{
+		return errorClassifier;
+	}
+
+	public int getIndexConcurrency()
+	{
+		return indexConcurrency;
+	}
+
+	public List<String> getInitSql()
+	{
+		return initSql;
+	}
+
 	protected PrintWriter getOut()
 	{
 		return out;
 	}
 
-	public RecordParser getParser()
+	public List<RecordParser> getParsers()
 	{
-		return parser;
+		return parsers;
+	}
+
+	/**
+	 * The most batches which could be held in the pipeline mode, including
+	 * those being filled, queued and loaded, which follows the number of
+	 * workers present.
+	 */
+	protected int getPipelineCapacity()
+	{
+		return Math.max(this.workers.size() - this.retired.size(), 1) * 2 + this.getParsers().size();
+	}
+
+	public ConnectionPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * The batch size used by readers in the pipeline mode, which follows the
+	 * mean of the sizes tuned by the workers present.
+	 */
+	protected int getReadBatchSize()
+	{
+		return readBatchSize;
 	}
 
 	public int getRebalance()
@@ -102,13 +541,68 @@ public class LoadMaster implements Runnable
 		return result;
 	}
 
+	public int getRetry()
+	{
+		return retry;
+	}
+
+	public long getRewriteBytes()
+	{
+		return rewriteBytes;
+	}
+
+	public int getRewriteParams()
+	{
+		return rewriteParams;
+	}
+
 	public InsertTemplate getTemplate()
 	{
 		return template;
 	}
 
+	/**
+	 * Run the init SQL on a new connection of the workers. The failure is
+	 * reported but the connection is still used.
+	 */
+	protected void initConnection(Connection conn)
+	{
+		if (this.getInitSql() == null || this.getInitSql().isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			this.executeSql(conn, this.getInitSql());
+		}
+		catch (SQLException e)
+		{
+			this.printError(e);
+		}
+	}
+
 	protected void initWorkers() throws Exception
 	{
+		if (this.getPool() != null)
+		{
+			try
+			{
+				this.getPool().warm(this.getConcurrency(), new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(Runnable task)
+					{
+						return LoadMaster.this.newThread(task);
+					}
+				});
+			}
+			catch (SQLException e)
+			{
+				// The workers would connect again by themselves.
+				this.printError(e);
+			}
+		}
+
 		lock.lock();
 		try
 		{
@@ -123,8 +617,18 @@ public class LoadMaster implements Runnable
 				this.readyWorkers.add(worker);
 			}
 
-			this.reading = true;
-			this.ended = false;
+			this.readyParsers.clear();
+			this.readyParsers.addAll(this.getParsers());
+			this.remainParsers = this.readyParsers.size();
+			this.readyBatches.clear();
+			this.freeBatches.clear();
+			this.totalBatches = 0;
+			this.retiring = 0;
+			this.retired.clear();
+			this.spawning = 0;
+			this.readBatchSize = this.getBatchSize();
+			this.tunedSizes.clear();
+			this.ended = this.remainParsers == 0;
 			this.stopped = false;
 			this.setResult(new long[] { 0L, 0L });
 		}
@@ -134,11 +638,41 @@ public class LoadMaster implements Runnable
 		}
 	}
 
+	public boolean isDeferIndex()
+	{
+		return deferIndex;
+	}
+
+	public boolean isDirectPath()
+	{
+		return directPath;
+	}
+
+	public boolean isPipeline()
+	{
+		return pipeline;
+	}
+
 	public boolean isRewriteBatch()
 	{
 		return rewriteBatch;
 	}
 
+	public boolean isRewriteChunked()
+	{
+		return rewriteChunked;
+	}
+
+	public boolean isTypedBind()
+	{
+		return typedBind;
+	}
+
+	public boolean isVirtualThread()
+	{
+		return virtualThread;
+	}
+
 	protected void log(String log)
 	{
 		Tools.debug(log);
@@ -157,9 +691,56 @@ public class LoadMaster implements Runnable
 	// }
 	// }
 
-	protected synchronized Connection newConnection() throws SQLException
+	/**
+	 * Take a connection from the pool if any, which opens connections in
+	 * parallel. Otherwise connections are opened one by one under a lock
+	 * instead of synchronized so that a virtual thread waiting here would not
+	 * pin its carrier.
+	 */
+	protected Connection newConnection() throws SQLException
 	{
-		return this.getDataBase().newConnection();
+		if (this.getPool() != null)
+		{
+			return this.getPool().take();
+		}
+
+		connectLock.lock();
+		try
+		{
+			return this.getDataBase().newConnection();
+		}
+		finally
+		{
+			connectLock.unlock();
+		}
+	}
+
+	/**
+	 * Create an unstarted thread for workers and readers, which is a virtual
+	 * one if virtualThread is enabled and supported by the JVM. Otherwise the
+	 * failure is reported once and platform threads are used from then on.
+	 */
+	protected Thread newThread(Runnable task)
+	{
+		if (this.isVirtualThread())
+		{
+			Throwable err = null;
+			if (isVirtualThreadSupported())
+			{
+				try
+				{
+					return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+				}
+				catch (Exception e)
+				{
+					// Such as a preview feature which is not enabled.
+					err = e.getCause() != null ? e.getCause() : e;
+				}
+			}
+			this.printError(new IllegalStateException("Virtual thread is not available, use platform thread", err));
+			this.setVirtualThread(false);
+		}
+		return new Thread(task);
 	}
 
 	protected LoadWorker newWorker() throws Exception
@@ -167,11 +748,288 @@ public class LoadMaster implements Runnable
 		return new LoadWorker(this);
 	}
 
+	/**
+	 * Get an empty batch to be filled, wait if all batches are in use.
+	 * 
+	 * @return the batch or null if the loading is ended.
+	 */
+	protected RecordBatch obtainBatch()
+	{
+		lock.lock();
+		try
+		{
+			while (!this.ended && this.freeBatches.isEmpty() && this.totalBatches >= this.getPipelineCapacity())
+			{
+				try
+				{
+					this.notFullBatches.await();
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+
+			if (this.ended)
+			{
+				return null;
+			}
+			else if (!this.freeBatches.isEmpty())
+			{
+				return this.freeBatches.removeFirst();
+			}
+			else
+			{
+				this.totalBatches++;
+				return new RecordBatch();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	protected void offerBatch(RecordBatch batch)
+	{
+		lock.lock();
+		try
+		{
+			this.readyBatches.add(batch);
+			this.notEmptyBatches.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	protected void printError(Throwable err)
 	{
 		CommandClient.printError(this.getErr(), err);
 	}
 
+	protected void printOut(String msg)
+	{
+		if (this.getOut() != null)
+		{
+			this.getOut().println(msg);
+			this.getOut().flush();
+		}
+	}
+
+	/**
+	 * Read a batch of records from the parser, the records which do not have
+	 * enough columns are logged and dropped.
+	 * 
+	 * @return the number of records dropped.
+	 */
+	protected int readRecords(RecordParser parser, RecordBatch records, int batchSize) throws IOException
+	{
+		int bads = 0;
+		records.clear();
+		Record record = null;
+		int needCols = this.getTemplate().getItems().length;
+		for (int i = 0; i < batchSize; i++)
+		{
+			if (parser.nextRecord(records))
+			{
+				record = records.get(records.size() - 1);
+				if (needCols > record.columns())
+				{
+					bads++;
+					record.printError(this.getErr(),
+							new SQLException(record.columns() + " columns found but need " + needCols + " to load"));
+					records.removeLast();
+				}
+			}
+			else
+			{
+				break;
+			}
+		}
+		return bads;
+	}
+
+	/**
+	 * Rebuild the deferred indexes in parallel by indexConcurrency
+	 * connections. Return false if any index failed to rebuild, whose
+	 * definition is reported.
+	 */
+	protected boolean rebuildIndexes()
+	{
+		final LinkedList<SecondaryIndex> indexes = new LinkedList<SecondaryIndex>(this.deferred);
+		this.deferred.clear();
+		if (indexes.isEmpty())
+		{
+			return true;
+		}
+
+		int conc = this.getIndexConcurrency() > 0 ? this.getIndexConcurrency() : this.getConcurrency();
+		conc = Math.max(Math.min(conc, indexes.size()), 1);
+
+		final boolean[] failed = new boolean[] { false };
+		List<Thread> threads = new LinkedList<Thread>();
+		for (int i = 0; i < conc; i++)
+		{
+			Thread t = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Connection conn = null;
+					SecondaryIndex index = null;
+					try
+					{
+						while (true)
+						{
+							synchronized (indexes)
+							{
+								index = indexes.pollFirst();
+							}
+							if (index == null)
+							{
+								break;
+							}
+							if (conn == null)
+							{
+								conn = newConnection();
+							}
+							try
+							{
+								getDialect().rebuildIndex(conn, index);
+								if (!conn.getAutoCommit())
+								{
+									conn.commit();
+								}
+								printOut("Rebuilt index " + index);
+							}
+							catch (SQLException e)
+							{
+								printError(new SQLException("Failed to rebuild index " + index + ": "
+										+ getDialect().rebuildIndexSql(index), e));
+								synchronized (failed)
+								{
+									failed[0] = true;
+								}
+							}
+						}
+					}
+					catch (SQLException e)
+					{
+						printError(e);
+						synchronized (failed)
+						{
+							failed[0] = true;
+						}
+						synchronized (indexes)
+						{
+							for (SecondaryIndex left : indexes)
+							{
+								printError(new SQLException("Index not rebuilt " + left + ": "
+										+ getDialect().rebuildIndexSql(left)));
+							}
+							indexes.clear();
+						}
+					}
+					finally
+					{
+						if (conn != null)
+						{
+							releaseConnection(conn);
+						}
+					}
+				}
+			});
+			t.start();
+			threads.add(t);
+		}
+
+		for (Thread t : threads)
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		synchronized (failed)
+		{
+			return !failed[0];
+		}
+	}
+
+	protected void recycleBatch(RecordBatch batch)
+	{
+		lock.lock();
+		try
+		{
+			batch.clear();
+			this.freeBatches.add(batch);
+			this.notFullBatches.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give back the connection to the pool if any, otherwise close it.
+	 */
+	protected void releaseConnection(Connection conn)
+	{
+		this.releaseConnection(conn, null);
+	}
+
+	/**
+	 * Release the connection on which the given SQL ran. If any SQL ran, the
+	 * connection is closed instead of given back to the pool, so that the
+	 * session state changed by the SQL would not leak to other loads.
+	 */
+	protected void releaseConnection(Connection conn, List<String> sqls)
+	{
+		if (this.getPool() != null && (sqls == null || sqls.isEmpty()))
+		{
+			this.getPool().give(conn);
+		}
+		else
+		{
+			try
+			{
+				conn.close();
+			}
+			catch (SQLException e)
+			{
+			}
+		}
+	}
+
+	/**
+	 * Take the batch size tuned by a worker, so that the readers follow the
+	 * mean of all workers instead of the one which tuned lately.
+	 */
+	protected void reportBatchSize(LoadWorker worker, int size)
+	{
+		lock.lock();
+		try
+		{
+			this.tunedSizes.put(worker, size);
+			long sum = 0L;
+			for (int tuned : this.tunedSizes.values())
+			{
+				sum += tuned;
+			}
+			this.setReadBatchSize((int) (sum / this.tunedSizes.size()));
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	protected void reportDestroy(LoadWorker worker)
 	{
 		// log("Worker#" + worker.getId() + " destroy");
@@ -180,6 +1038,8 @@ public class LoadMaster implements Runnable
 		try
 		{
 			this.workers.remove(worker);
+			this.retired.remove(worker);
+			this.tunedSizes.remove(worker);
 			this.readyWorkers.remove(worker);
 			this.untilEmptyWorkers.signalAll();
 		}
@@ -195,9 +1055,12 @@ public class LoadMaster implements Runnable
 		try
 		{
 			this.setResult(null);
-			this.reading = false;
 			this.ended = true;
 			notReading.signalAll();
+			this.freeBatches.addAll(this.readyBatches);
+			this.readyBatches.clear();
+			notEmptyBatches.signalAll();
+			notFullBatches.signalAll();
 		}
 		finally
 		{
@@ -205,44 +1068,75 @@ public class LoadMaster implements Runnable
 		}
 	}
 
-	protected void reportLoaded(LoadWorker worker, int total, int bads)
+	protected void reportLoaded(LoadWorker worker, int total, int bads, long elapsed)
 	{
 		// log("Worker#" + worker.getId() + " reporting loaded");
 
+		int spawn = 0;
+
 		lock.lock();
 		try
 		{
-			if (this.getResult() != null)
+			this.reportResult(total, bads);
+			spawn = this.control(total, elapsed);
+			if (this.retiring > 0 && this.workers.size() - this.retired.size() > 1)
 			{
-				this.getResult()[0] += total;
-				this.getResult()[1] += bads;
+				this.retiring--;
+				this.retired.add(worker);
+				worker.stop();
+			}
+			else if (!this.isPipeline())
+			{
+				this.readyWorkers.add(worker);
+				this.notEmptyWorkers.signalAll();
 			}
-			this.readyWorkers.add(worker);
-			this.notEmptyWorkers.signalAll();
 			// log("Worker#" + worker.getId() + " reported loaded");
 		}
 		finally
 		{
 			lock.unlock();
 		}
+
+		this.spawnWorkers(spawn);
 	}
 
-	protected void reportRead(LoadWorker worker)
+	protected void reportRead(LoadWorker worker, RecordParser parser)
 	{
-		// log("Worker#" + worker.getId() + " reporting read " + this.reading);
+		// log("Worker#" + worker.getId() + " reporting read");
 
 		lock.lock();
 		try
 		{
 			workersReading.put(String.valueOf(worker.getId()), false);
-			this.reading = false;
-			if (!this.parser.hasNext())
+			if (!parser.isEnded())
+			{
+				this.readyParsers.add(parser);
+			}
+			else if (--this.remainParsers <= 0)
 			{
 				this.ended = true;
 			}
 			notReading.signalAll(); // OK
-			// log("Worker#" + worker.getId() + " reported read " +
-			// this.reading);
+			// log("Worker#" + worker.getId() + " reported read");
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	protected void reportReaderEnd(LoadReader reader)
+	{
+		lock.lock();
+		try
+		{
+			if (--this.remainParsers <= 0)
+			{
+				this.ended = true;
+				notEmptyBatches.signalAll();
+				notFullBatches.signalAll();
+			}
+			notReading.signalAll();
 		}
 		finally
 		{
@@ -266,44 +1160,70 @@ public class LoadMaster implements Runnable
 		}
 	}
 
+	protected void reportResult(int total, int bads)
+	{
+		lock.lock();
+		try
+		{
+			if (this.getResult() != null)
+			{
+				this.getResult()[0] += total;
+				this.getResult()[1] += bads;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	@Override
 	public void run()
 	{
+		boolean begun = false;
 		try
 		{
+			if (this.getParsers() != null && this.getParsers().size() > 1)
+			{
+				for (RecordParser parser : this.getParsers())
+				{
+					this.printOut("Range " + parser.getRange() + " begins at byte " + parser.getOffset());
+				}
+			}
+
 			try
 			{
+				this.executeSql(this.getBeforeSql());
+				begun = true;
+				this.deferIndexes();
 				this.initWorkers();
 			}
 			catch (Exception e)
 			{
+				this.setResult(null);
 				this.printError(e);
 				return;
 			}
 
-			LoadWorker worker = null;
-			lock.lock();
-			try
+			if (this.isPipeline())
 			{
-				worker = this.shiftWorker();
-			}
-			finally
-			{
-				lock.unlock();
+				this.runPipeline();
+				return;
 			}
-			// log("Worker#" + worker.getId() + " shifting");
-			// worker.waitForStarted().wakeup();
-			worker.wakeup();
+
+			LoadWorker worker = null;
+			RecordParser parser = null;
 
 			while (true)
 			{
 				worker = null;
+				parser = null;
 
 				lock.lock();
 				try
 				{
-					// log("master waiting " + this.reading);
-					while (this.reading)
+					// log("master waiting");
+					while (!this.ended && this.readyParsers.isEmpty())
 					{
 						try
 						{ // block here
@@ -323,19 +1243,25 @@ public class LoadMaster implements Runnable
 						{
 						}
 					}
-					// log("master wakeup " + this.reading);
+					// log("master wakeup");
+
+					if (this.ended)
+					{
+						break;
+					}
+
+					// log("master shifting");
+					worker = this.shiftWorker();
+					// log("master shifted " + worker.getId());
 
 					if (this.ended)
 					{
+						this.readyWorkers.addFirst(worker);
 						break;
 					}
 
-					this.reading = true;
-
-					// log("master shifting " + this.reading);
-					worker = this.shiftWorker();
-					// log("master shifted " + this.reading + " " +
-					// worker.getId());
+					parser = this.readyParsers.removeFirst();
+					worker.setParser(parser);
 				}
 				finally
 				{
@@ -356,7 +1282,7 @@ public class LoadMaster implements Runnable
 			lock.lock();
 			try
 			{
-				while (!this.workers.isEmpty())
+				while (!this.workers.isEmpty() || this.spawning > 0)
 				{
 					try
 					{
@@ -366,6 +1292,44 @@ public class LoadMaster implements Runnable
 					{
 					}
 				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			this.closeParsers();
+
+			boolean done = this.rebuildIndexes();
+			try
+			{
+				if (begun)
+				{
+					this.executeSql(this.getAfterSql());
+				}
+			}
+			catch (Exception e)
+			{
+				this.printError(e);
+				done = false;
+			}
+
+			if (!done)
+			{
+				lock.lock();
+				try
+				{
+					this.setResult(null);
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+
+			lock.lock();
+			try
+			{
 				this.stopped = true;
 				this.untilStopped.signalAll();
 			}
@@ -376,30 +1340,192 @@ public class LoadMaster implements Runnable
 		}
 	}
 
+	/**
+	 * Run the pipeline mode in which dedicated readers keep parsing batches
+	 * into a bounded queue while every idle worker takes the next ready batch
+	 * to load, so that the parsing and loading are fully overlapped.
+	 */
+	protected void runPipeline()
+	{
+		List<LoadWorker> workers = new LinkedList<LoadWorker>();
+
+		lock.lock();
+		try
+		{
+			workers.addAll(this.workers);
+			this.readyWorkers.clear();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		for (RecordParser parser : this.getParsers())
+		{
+			this.newThread(new LoadReader(this, parser)).start();
+		}
+
+		for (LoadWorker worker : workers)
+		{
+			worker.wakeup();
+		}
+
+		lock.lock();
+		try
+		{
+			while (this.remainParsers > 0 && !this.ended)
+			{
+				try
+				{
+					notReading.await();
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+
+			// Workers quit by themselves after the queue is drained.
+			while (!this.workers.isEmpty() || this.spawning > 0)
+			{
+				try
+				{
+					this.untilEmptyWorkers.await();
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public LoadMaster setAfterSql(List<String> afterSql)
+	{
+		this.afterSql = afterSql;
+		return this;
+	}
+
+	public LoadMaster setBatchLatency(long batchLatency)
+	{
+		this.batchLatency = batchLatency;
+		return this;
+	}
+
 	public LoadMaster setBatchSize(int batchSize)
 	{
 		this.batchSize = Math.max(batchSize, 1);
 		return this;
 	}
 
+	public LoadMaster setBatchSizeMax(int batchSizeMax)
+	{
+		this.batchSizeMax = Math.max(batchSizeMax, 1);
+		return this;
+	}
+
+	public LoadMaster setBatchSizeMin(int batchSizeMin)
+	{
+		this.batchSizeMin = Math.max(batchSizeMin, 1);
+		return this;
+	}
+
+	public LoadMaster setBeforeSql(List<String> beforeSql)
+	{
+		this.beforeSql = beforeSql;
+		return this;
+	}
+
+	public LoadMaster setCommitInterval(int commitInterval)
+	{
+		this.commitInterval = commitInterval;
+		return this;
+	}
+
+	public LoadMaster setCommitRows(long commitRows)
+	{
+		this.commitRows = commitRows;
+		return this;
+	}
+
 	public LoadMaster setConcurrency(int concurrency)
 	{
 		this.concurrency = Math.max(concurrency, 1);
 		return this;
 	}
 
+	/**
+	 * Set the controller which adjusts the number of workers at runtime, or
+	 * null to keep the concurrency fixed.
+	 */
+	public LoadMaster setController(ConcurrencyController controller)
+	{
+		this.controller = controller;
+		return this;
+	}
+
 	public LoadMaster setDataBase(DataBase dataBase)
 	{
 		this.dataBase = dataBase;
 		return this;
 	}
 
+	public LoadMaster setDateFormat(String dateFormat)
+	{
+		this.dateFormat = dateFormat;
+		return this;
+	}
+
+	public LoadMaster setDeferIndex(boolean deferIndex)
+	{
+		this.deferIndex = deferIndex;
+		return this;
+	}
+
+	public LoadMaster setDialect(LoadDialect dialect)
+	{
+		this.dialect = dialect != null ? dialect : new GenericDialect();
+		return this;
+	}
+
+	public LoadMaster setDirectPath(boolean directPath)
+	{
+		this.directPath = directPath;
+		return this;
+	}
+
+	public LoadMaster setEngine(String engine)
+	{
+		this.engine = engine;
+		return this;
+	}
+
 	public LoadMaster setErr(PrintWriter err)
 	{
 		this.err = err;
 		return this;
 	}
 
+	public LoadMaster setErrorClassifier(ErrorClassifier errorClassifier)
+	{
+		this.errorClassifier = errorClassifier;
+		return this;
+	}
+
+	public LoadMaster setIndexConcurrency(int indexConcurrency)
+	{
+		this.indexConcurrency = indexConcurrency;
+		return this;
+	}
+
+	public LoadMaster setInitSql(List<String> initSql)
+	{
+		this.initSql = initSql;
+		return this;
+	}
+
 	public LoadMaster setOut(PrintWriter out)
 	{
 		this.out = out;
@@ -408,7 +1534,32 @@ public class LoadMaster implements Runnable
 
 	public LoadMaster setParser(RecordParser parser)
 	{
-		this.parser = parser;
+		List<RecordParser> parsers = new LinkedList<RecordParser>();
+		parsers.add(parser);
+		return this.setParsers(parsers);
+	}
+
+	public LoadMaster setParsers(List<RecordParser> parsers)
+	{
+		this.parsers = parsers;
+		return this;
+	}
+
+	public LoadMaster setPipeline(boolean pipeline)
+	{
+		this.pipeline = pipeline;
+		return this;
+	}
+
+	public LoadMaster setPool(ConnectionPool pool)
+	{
+		this.pool = pool;
+		return this;
+	}
+
+	protected LoadMaster setReadBatchSize(int readBatchSize)
+	{
+		this.readBatchSize = readBatchSize;
 		return this;
 	}
 
@@ -424,15 +1575,52 @@ public class LoadMaster implements Runnable
 		return this;
 	}
 
+	public LoadMaster setRetry(int retry)
+	{
+		this.retry = retry;
+		return this;
+	}
+
 	public LoadMaster setRewriteBatch(boolean rewriteInsert)
 	{
 		this.rewriteBatch = rewriteInsert;
 		return this;
 	}
 
+	public LoadMaster setRewriteBytes(long rewriteBytes)
+	{
+		this.rewriteBytes = rewriteBytes;
+		return this;
+	}
+
+	public LoadMaster setRewriteChunked(boolean rewriteChunked)
+	{
+		this.rewriteChunked = rewriteChunked;
+		return this;
+	}
+
+	public LoadMaster setRewriteParams(int rewriteParams)
+	{
+		this.rewriteParams = rewriteParams;
+		return this;
+	}
+
 	public LoadMaster setTemplate(InsertTemplate template)
 	{
 		this.template = template;
+		this.binders = null;
+		return this;
+	}
+
+	public LoadMaster setTypedBind(boolean typedBind)
+	{
+		this.typedBind = typedBind;
+		return this;
+	}
+
+	public LoadMaster setVirtualThread(boolean virtualThread)
+	{
+		this.virtualThread = virtualThread;
 		return this;
 	}
 
@@ -451,6 +1639,60 @@ public class LoadMaster implements Runnable
 		return this.readyWorkers.removeFirst();
 	}
 
+	/**
+	 * Start the workers counted as spawning out of the lock, so that the
+	 * reports of other workers would not be stalled by the thread creation.
+	 * The worker started after the loading was ended is stopped at once.
+	 */
+	protected void spawnWorkers(int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			LoadWorker worker = null;
+			try
+			{
+				worker = this.newWorker();
+				worker.start();
+			}
+			catch (Exception e)
+			{
+				this.printError(e);
+			}
+
+			lock.lock();
+			try
+			{
+				if (worker == null)
+				{
+					this.spawning -= count - i;
+					this.untilEmptyWorkers.signalAll();
+					return;
+				}
+
+				this.spawning--;
+				workersReading.put(String.valueOf(worker.getId()), false);
+				this.workers.add(worker);
+				if (this.ended)
+				{
+					worker.stop();
+				}
+				else if (this.isPipeline())
+				{
+					worker.wakeup();
+				}
+				else
+				{
+					this.readyWorkers.add(worker);
+					this.notEmptyWorkers.signalAll();
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
 	public void stop()
 	{
 		Collection<LoadWorker> workers = new LinkedList<LoadWorker>();
@@ -460,6 +1702,8 @@ public class LoadMaster implements Runnable
 		{
 			this.ended = true;
 			workers.addAll(this.workers);
+			notEmptyBatches.signalAll();
+			notFullBatches.signalAll();
 		}
 		finally
 		{
@@ -474,6 +1718,35 @@ public class LoadMaster implements Runnable
 		}
 	}
 
+	/**
+	 * Take the next batch which is ready to load, wait if the queue is empty.
+	 * 
+	 * @return the batch or null if the queue is drained and no more batch
+	 *         would come.
+	 */
+	protected RecordBatch takeBatch()
+	{
+		lock.lock();
+		try
+		{
+			while (!this.ended && this.readyBatches.isEmpty())
+			{
+				try
+				{
+					this.notEmptyBatches.await();
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+			return this.readyBatches.isEmpty() ? null : this.readyBatches.removeFirst();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	public void waitForStopped()
 	{
 		lock.lock();
@@ -495,4 +1768,33 @@ public class LoadMaster implements Runnable
 			lock.unlock();
 		}
 	}
+
+	/**
+	 * Wait for the master to stop at most the given milliseconds.
+	 * 
+	 * @return true if the master stopped.
+	 */
+	public boolean waitForStopped(long timeout)
+	{
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		try
+		{
+			while (!this.stopped && nanos > 0L)
+			{
+				try
+				{
+					nanos = this.untilStopped.awaitNanos(nanos);
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+			return this.stopped;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
 }
@@ -0,0 +1,76 @@
+package org.kernelab.jdl;
+
+/**
+ * The dedicated parsing thread of the pipeline mode. It keeps filling batches
+ * from one parser and offers them to the master until the parser is drained.
+ */
+public class LoadReader implements Runnable
+{
+	private LoadMaster		master;
+
+	private RecordParser	parser;
+
+	public LoadReader(LoadMaster master, RecordParser parser)
+	{
+		this.master = master;
+		this.parser = parser;
+	}
+
+	protected LoadMaster getMaster()
+	{
+		return master;
+	}
+
+	protected RecordParser getParser()
+	{
+		return parser;
+	}
+
+	@Override
+	public void run()
+	{
+		LoadMaster master = this.getMaster();
+		RecordParser parser = this.getParser();
+		RecordBatch batch = null;
+		try
+		{
+			while ((batch = master.obtainBatch()) != null)
+			{
+				int bads = master.readRecords(parser, batch, master.getReadBatchSize());
+
+				if (bads > 0)
+				{
+					master.reportResult(bads, bads);
+				}
+
+				if (batch.isEmpty())
+				{
+					master.recycleBatch(batch);
+				}
+				else
+				{
+					master.offerBatch(batch);
+				}
+				batch = null;
+
+				if (parser.isEnded())
+				{
+					break;
+				}
+			}
+		}
+		catch (Throwable ex)
+		{
+			if (batch != null)
+			{
+				master.recycleBatch(batch);
+			}
+			master.printError(ex);
+			master.reportError(null);
+		}
+		finally
+		{
+			master.reportReaderEnd(this);
+		}
+	}
+}
@@ -1,12 +1,18 @@
 package org.kernelab.jdl;
 
-import java.sql.BatchUpdateException;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -15,7 +21,17 @@ import org.kernelab.basis.Tools;
 
 public class LoadWorker implements Runnable
 {
-	protected static final int[]	EMPTY_RESULT	= new int[] { 0, 0 };
+	protected static final int[]	EMPTY_RESULT		= new int[] { 0, 0 };
+
+	/**
+	 * The most rewrite statements kept for each connection.
+	 */
+	protected static final int		REWRITE_CACHE_SIZE	= 32;
+
+	/**
+	 * The charset to estimate the bytes of a rewrite statement.
+	 */
+	protected static final Charset	REWRITE_CHARSET		= Charset.forName("UTF-8");
 
 	private static int				ID				= 0;
 
@@ -33,11 +49,66 @@ public class LoadWorker implements Runnable
 
 	private Connection				connection;
 
+	private final ConnectionHealth	health			= new ConnectionHealth();
+
+	/**
+	 * The binders of parameters, null to bind all as string.
+	 */
+	private ColumnBinder[]			binders;
+
+	private LoadEngine				engine;
+
 	private PreparedStatement		statement;
 
-	private String					rewriteInsert;
+	private Map<Integer, PreparedStatement>	rewriteStatements	= new LinkedHashMap<Integer, PreparedStatement>(16,
+			0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<Integer, PreparedStatement> eldest)
+		{
+			if (this.size() > REWRITE_CACHE_SIZE)
+			{
+				try
+				{
+					eldest.getValue().close();
+				}
+				catch (SQLException e)
+				{
+				}
+				return true;
+			}
+			else
+			{
+				return false;
+			}
+		}
+	};
+
+	private RecordParser			parser;
+
+	private int						batchSize		= 0;
 
-	private PreparedStatement		rewriteStatement;
+	/**
+	 * The batches and rows loaded but not committed yet.
+	 */
+	private int						pendingBatches	= 0;
+
+	private int						pendingRows		= 0;
+
+	/**
+	 * The ids of the records in the pending batches, which are logged if the
+	 * pending transaction is lost.
+	 */
+	private long[]					pendingIds		= new long[64];
+
+	private int						pendingSize		= 0;
+
+	/**
+	 * The times the current batch has been retried for transient errors.
+	 */
+	private int						retrying		= 0;
 
 	// private boolean waiting = false;
 
@@ -45,62 +116,110 @@ public class LoadWorker implements Runnable
 
 	private boolean					needWait		= true;
 
-	private boolean					stopping		= false;
+	private volatile boolean		stopping		= false;
 
 	private boolean					started			= false;
 
 	// private boolean running = false;
 
-	private LinkedList<Record>		records			= new LinkedList<Record>();
+	private RecordBatch				records			= new RecordBatch();
 
 	public LoadWorker(LoadMaster master)
 	{
 		this.setMaster(master);
 	}
 
-	protected void addBatch(PreparedStatement ps, int[] index, String[] data) throws SQLException
+	protected void addBatch(PreparedStatement ps, int[] index, Record record) throws SQLException
 	{
 		for (int i = 0; i < index.length; i++)
 		{
-			ps.setString(i + 1, data[index[i]]);
+			this.bind(ps, i + 1, i, record.get(index[i]));
 		}
 		ps.addBatch();
 	}
 
 	protected int addRewrite(PreparedStatement ps, int[] index, List<Record> records) throws SQLException
 	{
-		String[] data = null;
 		int offset = 0, i = 0;
 		for (Record record : records)
 		{
-			data = record.data;
 			for (i = 0; i < index.length; i++)
 			{
-				ps.setString(offset + i + 1, data[index[i]]);
+				this.bind(ps, offset + i + 1, i, record.get(index[i]));
 			}
 			offset += index.length;
 		}
 		return ps.executeUpdate();
 	}
 
-	protected int addUpdate(PreparedStatement ps, int[] index, String[] data) throws SQLException
+	protected int addUpdate(PreparedStatement ps, int[] index, Record record) throws SQLException
 	{
 		for (int i = 0; i < index.length; i++)
 		{
-			ps.setString(i + 1, data[index[i]]);
+			this.bind(ps, i + 1, i, record.get(index[i]));
 		}
 		return ps.executeUpdate();
 	}
 
-	protected int[] checkResult(int[] counts, LinkedList<Record> records)
+	/**
+	 * Bind the value of the given parameter of the template to the given
+	 * position of the statement.
+	 */
+	protected void bind(PreparedStatement ps, int position, int param, String value) throws SQLException
+	{
+		if (binders != null)
+		{
+			binders[param].bind(ps, position, value);
+		}
+		else
+		{
+			ps.setString(position, value);
+		}
+	}
+
+	/**
+	 * Load the failed records again by halves, each half which fails would be
+	 * split further. So k bad records among n would be isolated in about
+	 * k*log(n) batches rather than n single updates.
+	 */
+	protected int[] bisect(List<Record> records)
+	{
+		if (records.isEmpty())
+		{
+			return EMPTY_RESULT;
+		}
+
+		if (records.size() == 1)
+		{
+			return this.trackBads(this.getConnection(), this.getTemplate(), records);
+		}
+
+		int half = records.size() / 2;
+
+		int[] headRes = this.doBatch(this.getConnection(), this.getTemplate(), records.subList(0, half));
+		int[] tailRes = this.doBatch(this.getConnection(), this.getTemplate(),
+				records.subList(half, records.size()));
+
+		return new int[] { headRes[0] + tailRes[0], headRes[1] + tailRes[1] };
+	}
+
+	public int[] checkResult(int[] counts, List<Record> records)
 	{
+		if (counts == null)
+		{
+			return this.bisect(records);
+		}
+
 		int i = 0;
-		LinkedList<Record> good = new LinkedList<Record>(), bads = new LinkedList<Record>();
-		Record record = null;
-		while (!records.isEmpty())
+		LinkedList<Record> good = new LinkedList<Record>(), bads = new LinkedList<Record>(),
+				unknown = new LinkedList<Record>();
+		for (Record record : records)
 		{
-			record = records.removeFirst();
-			if (counts == null || counts[i] == Statement.EXECUTE_FAILED)
+			if (i >= counts.length)
+			{
+				unknown.add(record);
+			}
+			else if (counts[i] == Statement.EXECUTE_FAILED)
 			{
 				bads.add(record);
 			}
@@ -112,9 +231,38 @@ public class LoadWorker implements Runnable
 		}
 
 		int[] goodRes = this.doBatch(this.getConnection(), this.getTemplate(), good);
+		int[] unknownRes = this.bisect(unknown);
 		int[] badsRes = this.trackBads(this.getConnection(), this.getTemplate(), bads);
 
-		return new int[] { goodRes[0] + badsRes[0], goodRes[1] + badsRes[1] };
+		return new int[] { goodRes[0] + unknownRes[0] + badsRes[0], goodRes[1] + unknownRes[1] + badsRes[1] };
+	}
+
+	/**
+	 * Count the batch just loaded into the pending transaction and commit it
+	 * once the commitInterval or commitRows is reached.
+	 */
+	protected void commitPending(Connection conn, List<Record> records, int rows) throws SQLException
+	{
+		if (this.isCommitDue(pendingBatches + 1, pendingRows + rows))
+		{
+			conn.commit();
+			pendingBatches = 0;
+			pendingRows = 0;
+			pendingSize = 0;
+		}
+		else
+		{
+			pendingBatches++;
+			pendingRows += rows;
+			if (pendingSize + records.size() > pendingIds.length)
+			{
+				pendingIds = Arrays.copyOf(pendingIds, Math.max(pendingIds.length * 2, pendingSize + records.size()));
+			}
+			for (Record record : records)
+			{
+				pendingIds[pendingSize++] = record.getId();
+			}
+		}
 	}
 
 	protected void destroy()
@@ -128,14 +276,37 @@ public class LoadWorker implements Runnable
 			master = this.getMaster();
 			if (master != null)
 			{
+				if (this.getStatement() != null)
+				{
+					try
+					{
+						this.getStatement().close();
+					}
+					catch (SQLException e)
+					{
+					}
+				}
 				this.setStatement(null);
-				this.rewriteStatement = null;
+				this.resetRewrite();
+				if (this.engine != null)
+				{
+					this.engine.close();
+				}
 				try
 				{
 					Connection conn = this.getConnection(false);
 					if (conn != null)
 					{
-						conn.close();
+						try
+						{
+							this.flushPending(conn);
+						}
+						catch (SQLException e)
+						{
+							printError(e);
+							this.dropPending();
+						}
+						master.releaseConnection(conn, master.getInitSql());
 					}
 				}
 				catch (Exception e)
@@ -152,6 +323,7 @@ public class LoadWorker implements Runnable
 					}
 				}
 				this.getRecords().clear();
+				this.setParser(null);
 				this.setThread(null);
 				this.setMaster(null);
 			}
@@ -168,85 +340,65 @@ public class LoadWorker implements Runnable
 		// log("destroyed");
 	}
 
-	protected int[] doBatch(Connection conn, InsertTemplate template, LinkedList<Record> records)
+	protected int[] doBatch(Connection conn, InsertTemplate template, List<Record> records)
 	{
 		if (records.isEmpty())
 		{
 			return EMPTY_RESULT;
 		}
 
-		if (this.getMaster().isRewriteBatch())
-		{
-			return this.doBatchRewrite(conn, template, records);
-		}
-		else
-		{
-			return this.doBatchNormal(conn, template, records);
-		}
+		return this.getEngine().load(this, conn, template, records);
+	}
+
+	/**
+	 * Load the records by JDBC batch in the pending transaction.
+	 * 
+	 * @see GenericDialect.BatchEngine
+	 */
+	public int[] doBatchNormal(Connection conn, InsertTemplate template, List<Record> records)
+	{
+		return new GenericDialect.BatchEngine().load(this, conn, template, records);
 	}
 
-	protected int[] doBatchNormal(Connection conn, InsertTemplate template, LinkedList<Record> records)
+	public int[] doBatchRewrite(Connection conn, InsertTemplate template, List<Record> records)
 	{
 		int total = records.size();
+		List<List<Record>> chunks = this.splitRewrite(template, records);
 		try
 		{
-			conn.setAutoCommit(false);
-
-			PreparedStatement ps = this.ensureStatement();
-			try
+			if (chunks.size() == 1 && this.isCommitEach())
 			{
-				ps.clearBatch();
-
-				int[] index = template.getIndexes();
+				conn.setAutoCommit(true);
 
-				for (Record record : records)
-				{
-					this.addBatch(ps, index, record.data);
-				}
-
-				ps.executeBatch();
-
-				conn.commit();
-
-				return new int[] { total, 0 };
+				this.addRewrite(this.getRewriteStatement(conn, template, total), template.getIndexes(), records);
 			}
-			finally
+			else
 			{
-				if (ps != null && ps != this.getStatement())
+				conn.setAutoCommit(false);
+				Savepoint sp = this.markPending(conn);
+				try
 				{
-					try
-					{
-						ps.close();
-					}
-					catch (Exception e)
+					for (List<Record> chunk : chunks)
 					{
+						this.addRewrite(this.getRewriteStatement(conn, template, chunk.size()),
+								template.getIndexes(), chunk);
 					}
+					this.commitPending(conn, records, total);
+				}
+				catch (SQLException e)
+				{
+					this.rollbackPending(conn, sp);
+					throw e;
 				}
 			}
-		}
-		catch (BatchUpdateException e)
-		{
-			int[] counts = e.getUpdateCounts();
-			try
-			{
-				conn.rollback();
-			}
-			catch (SQLException ex)
-			{
-				printError(ex);
-			}
-			return this.checkResult(counts, records);
+
+			return new int[] { total, 0 };
 		}
 		catch (SQLException e)
 		{
-			printError(e);
-			try
+			if (this.isRetry(e))
 			{
-				conn.rollback();
-			}
-			catch (SQLException ex)
-			{
-				printError(ex);
+				return this.retryBatch(template, records, e);
 			}
 			return this.checkResult(null, records);
 		}
@@ -257,42 +409,25 @@ public class LoadWorker implements Runnable
 		}
 	}
 
-	protected int[] doBatchRewrite(Connection conn, InsertTemplate template, LinkedList<Record> records)
+	/**
+	 * Report the rows which were loaded but lost with the pending transaction
+	 * as bad ones, each record of the pending batches is logged.
+	 */
+	protected void dropPending()
 	{
-		int total = records.size();
-		PreparedStatement ps = null;
-		try
-		{
-			conn.setAutoCommit(true);
-
-			ps = this.getRewriteStatement(conn, template, records.size());
-
-			this.addRewrite(ps, template.getIndexes(), records);
-
-			return new int[] { total, 0 };
-		}
-		catch (SQLException e)
-		{
-			return this.checkResult(null, records);
-		}
-		catch (Throwable e)
+		if (pendingRows > 0)
 		{
-			printError(e);
-			return new int[] { total, total };
-		}
-		finally
-		{
-			if (ps != null && ps != this.rewriteStatement)
+			this.printError(new SQLException(pendingRows + " rows uncommitted were rolled back"));
+			SQLException lost = new SQLException("Rolled back with the uncommitted transaction");
+			for (int i = 0; i < pendingSize; i++)
 			{
-				try
-				{
-					ps.close();
-				}
-				catch (SQLException e)
-				{
-				}
+				this.logBad(new Record(pendingIds[i], new String[0]), lost);
 			}
+			this.getMaster().reportResult(0, pendingRows);
 		}
+		pendingBatches = 0;
+		pendingRows = 0;
+		pendingSize = 0;
 	}
 
 	protected PreparedStatement ensureStatement() throws SQLException
@@ -330,9 +465,31 @@ public class LoadWorker implements Runnable
 		return true;
 	}
 
+	/**
+	 * Commit the pending transaction if any.
+	 */
+	protected void flushPending(Connection conn) throws SQLException
+	{
+		if (pendingBatches > 0)
+		{
+			conn.commit();
+			pendingBatches = 0;
+			pendingRows = 0;
+			pendingSize = 0;
+		}
+	}
+
 	public int getBatchSize()
 	{
-		return this.getMaster().getBatchSize();
+		return batchSize > 0 ? batchSize : this.getMaster().getBatchSize();
+	}
+
+	/**
+	 * Get the binders of parameters, null if typedBind is disabled.
+	 */
+	protected ColumnBinder[] getBinders()
+	{
+		return binders;
 	}
 
 	protected Connection getConnection()
@@ -340,72 +497,72 @@ public class LoadWorker implements Runnable
 		return getConnection(true);
 	}
 
+	/**
+	 * Get the connection of this worker. The connection is validated only if
+	 * it has been idle for a while or an error occurred on it. A broken one is
+	 * closed and a new one is opened with exponential backoff between
+	 * attempts.
+	 */
 	protected Connection getConnection(boolean newIfNull)
 	{
 		do
 		{
 			try
 			{
-				if (connection == null || !connection.isValid(5))
+				if (connection != null && health.isNeedValidate()
+						&& !connection.isValid(ConnectionHealth.VALIDATE_TIMEOUT))
 				{
-					if (connection != null)
+					try
 					{
-						try
-						{
-							connection.rollback();
-						}
-						catch (SQLException e)
-						{
-						}
-						try
-						{
-							connection.close();
-						}
-						catch (SQLException e)
-						{
-						}
-						finally
-						{
-							this.setConnection(null);
-						}
+						connection.rollback();
 					}
-					if (newIfNull)
+					catch (SQLException e)
 					{
-						Connection conn = this.getMaster().newConnection();
-						if (conn.isValid(5))
-						{
-							this.setConnection(conn);
-						}
-						else
-						{
-							try
-							{
-								conn.close();
-							}
-							catch (SQLException e)
-							{
-							}
-						}
+					}
+					this.dropPending();
+					try
+					{
+						connection.close();
+					}
+					catch (SQLException e)
+					{
+					}
+					finally
+					{
+						this.setConnection(null);
 					}
 				}
-			}
-			catch (SQLException e)
-			{
-				printError(e);
-				try
+				if (connection == null && newIfNull)
 				{
-					Thread.sleep(10 * 1000);
+					this.setConnection(this.getMaster().newConnection());
+					health.connected();
 				}
-				catch (InterruptedException e1)
+				else if (connection != null)
 				{
+					health.touch();
 				}
 			}
+			catch (SQLException e)
+			{
+				printError(e);
+				health.suspect();
+				health.backoff();
+			}
 		}
-		while (connection == null && newIfNull);
+		while (connection == null && newIfNull && !this.isStopping());
 
 		return connection;
 	}
 
+	protected LoadEngine getEngine()
+	{
+		if (engine == null)
+		{
+			engine = this.getMaster().getDialect().newEngine(this.getMaster());
+		}
+		return engine;
+	}
+
 	public int getId()
 	{
 		return id;
@@ -416,35 +573,48 @@ public class LoadWorker implements Runnable
 		return master;
 	}
 
+	protected RecordParser getParser()
+	{
+		return parser;
+	}
+
 	protected int getRebalance()
 	{
 		return this.getMaster().getRebalance();
 	}
 
-	protected LinkedList<Record> getRecords()
+	protected RecordBatch getRecords()
 	{
 		return records;
 	}
 
-	protected PreparedStatement getRewriteStatement(Connection conn, InsertTemplate template, int rows)
-			throws SQLException
+	/**
+	 * Get the most rows allowed in one rewrite statement by rewriteParams.
+	 */
+	protected int getRewriteRowsMost(InsertTemplate template)
 	{
-		if (rows == this.getBatchSize())
+		int params = this.getMaster().getRewriteParams();
+		if (params <= 0)
 		{
-			if (this.rewriteStatement == null)
-			{
-				if (this.rewriteInsert == null)
-				{
-					this.rewriteInsert = template.getInsert(rows);
-				}
-				this.rewriteStatement = conn.prepareStatement(this.rewriteInsert);
-			}
-			return this.rewriteStatement;
+			return Integer.MAX_VALUE;
 		}
-		else
+		return Math.max(params / Math.max(template.getIndexes().length, 1), 1);
+	}
+
+	/**
+	 * Get the multi-row insert statement of the given rows from the cache of
+	 * this connection, or prepare one if absent.
+	 */
+	protected PreparedStatement getRewriteStatement(Connection conn, InsertTemplate template, int rows)
+			throws SQLException
+	{
+		PreparedStatement ps = this.rewriteStatements.get(rows);
+		if (ps == null)
 		{
-			return conn.prepareStatement(template.getInsert(rows));
+			ps = conn.prepareStatement(template.getInsert(rows));
+			this.rewriteStatements.put(rows, ps);
 		}
+		return ps;
 	}
 
 	protected PreparedStatement getStatement()
@@ -473,9 +643,26 @@ public class LoadWorker implements Runnable
 
 	protected void init(Connection conn) throws SQLException
 	{
+		this.getMaster().initConnection(conn);
 		conn.setAutoCommit(false);
+		this.binders = this.getMaster().getBinders(conn);
 		this.setStatement(this.newStatement());
-		this.rewriteStatement = null;
+		this.resetRewrite();
+	}
+
+	protected boolean isCommitDue(int batches, long rows)
+	{
+		int interval = this.getMaster().getCommitInterval();
+		long most = this.getMaster().getCommitRows();
+		return (interval <= 0 && most <= 0) || (interval > 0 && batches >= interval) || (most > 0 && rows >= most);
+	}
+
+	/**
+	 * Tell whether each batch would be committed on its own.
+	 */
+	protected boolean isCommitEach()
+	{
+		return this.getMaster().getCommitInterval() <= 1 && this.getMaster().getCommitRows() <= 0;
 	}
 
 	protected boolean isNeedWait()
@@ -483,6 +670,17 @@ public class LoadWorker implements Runnable
 		return needWait;
 	}
 
+	/**
+	 * Tell whether the batch failed for the given error should be retried as a
+	 * whole.
+	 */
+	protected boolean isRetry(SQLException err)
+	{
+		ErrorClassifier classifier = this.getMaster().getErrorClassifier();
+		return retrying < this.getMaster().getRetry() && classifier != null && classifier.isTransient(err)
+				&& !this.isStopping();
+	}
+
 	protected boolean isStarted()
 	{
 		return started;
@@ -493,6 +691,53 @@ public class LoadWorker implements Runnable
 		return stopping;
 	}
 
+	/**
+	 * Split the records into parts each of which would be loaded by one rewrite
+	 * statement without exceeding the limits of bind parameters and estimated
+	 * bytes.
+	 */
+	protected List<List<Record>> limitRewrite(InsertTemplate template, List<Record> records)
+	{
+		List<List<Record>> parts = new LinkedList<List<Record>>();
+
+		int[] index = template.getIndexes();
+		int rows = records.size();
+		int most = this.getRewriteRowsMost(template);
+		long limit = this.getMaster().getRewriteBytes();
+
+		if (limit <= 0)
+		{
+			for (int from = 0; from < rows; from += most)
+			{
+				parts.add(records.subList(from, Math.min(from + most, rows)));
+			}
+			return parts;
+		}
+
+		// Each row takes "(values)," in the statement text besides its data,
+		// including the expressions of SET.
+		long head = template.getInsert(1).length(), text = template.getValues().length() + 3, bytes = head, size = 0L;
+		int from = 0, row = 0;
+		for (Record record : records)
+		{
+			size = text + record.bytes(REWRITE_CHARSET, index);
+			if (row > from && (row - from >= most || bytes + size > limit))
+			{
+				parts.add(records.subList(from, row));
+				from = row;
+				bytes = head;
+			}
+			bytes += size;
+			row++;
+		}
+		if (from < rows)
+		{
+			parts.add(records.subList(from, rows));
+		}
+
+		return parts;
+	}
+
 	protected void log(String msg)
 	{
 		Tools.debug(Tools.getDateTimeString() + " Worker#" + id + " " + msg);
@@ -503,6 +748,29 @@ public class LoadWorker implements Runnable
 		record.printError(this.getMaster().getErr(), ex);
 	}
 
+	/**
+	 * Set a savepoint before a batch joins the pending transaction, so that a
+	 * failed batch could be rolled back alone and the batches before it be
+	 * committed. If the savepoint is not supported, the pending transaction is
+	 * committed right now instead.
+	 */
+	protected Savepoint markPending(Connection conn) throws SQLException
+	{
+		if (pendingBatches == 0)
+		{
+			return null;
+		}
+		try
+		{
+			return conn.setSavepoint();
+		}
+		catch (SQLException e)
+		{
+			this.flushPending(conn);
+			return null;
+		}
+	}
+
 	protected PreparedStatement newStatement() throws SQLException
 	{
 		return this.getConnection().prepareStatement(this.getTemplate().getInsert());
@@ -528,35 +796,89 @@ public class LoadWorker implements Runnable
 		this.getMaster().printError(err);
 	}
 
-	protected int readRecords(RecordParser parser, List<Record> records)
+	/**
+	 * Keep the highest two bits of the size, so that a tuned batch size would
+	 * take only a few distinct values and the rewrite statement would not be
+	 * prepared again on every tiny change.
+	 */
+	protected static int quantize(int size)
 	{
-		int bads = 0;
-		records.clear();
-		Record record = null;
-		int needCols = this.getTemplate().getItems().length;
-		int batchSize = this.getBatchSize();
-		for (int i = 0; i < batchSize; i++)
+		int high = Integer.highestOneBit(size);
+		return high <= 2 ? size : size & (high | (high >> 1));
+	}
+
+	protected int readRecords(RecordParser parser, RecordBatch records) throws IOException
+	{
+		return this.getMaster().readRecords(parser, records, this.getBatchSize());
+	}
+
+	protected void resetRewrite()
+	{
+		for (PreparedStatement ps : this.rewriteStatements.values())
 		{
-			if (parser.hasNext())
+			try
 			{
-				record = parser.next();
-				if (needCols <= record.data.length)
-				{
-					records.add(record);
-				}
-				else
-				{
-					bads++;
-					this.logBad(record,
-							new SQLException(record.data.length + " columns found but need " + needCols + " to load"));
-				}
+				ps.close();
 			}
-			else
+			catch (SQLException e)
+			{
+			}
+		}
+		this.rewriteStatements.clear();
+	}
+
+	/**
+	 * Load the batch again after a transient error, waiting with backoff and
+	 * taking the connection again which would be validated and reconnected if
+	 * broken.
+	 */
+	protected int[] retryBatch(InsertTemplate template, List<Record> records, SQLException err)
+	{
+		retrying++;
+		try
+		{
+			this.printError(new SQLException("Retry#" + retrying + " of " + records.size() + " rows for "
+					+ err.getLocalizedMessage(), err.getSQLState(), err.getErrorCode(), err));
+			health.suspect();
+			ConnectionHealth.sleep(
+					ConnectionHealth.backoff(retrying - 1, ConnectionHealth.BACKOFF_BASE, ConnectionHealth.BACKOFF_MAX));
+			return this.doBatch(this.getConnection(), template, records);
+		}
+		finally
+		{
+			retrying--;
+		}
+	}
+
+	/**
+	 * Roll back the failed batch and commit the batches pending before it, so
+	 * that the error recovery would begin with nothing pending.
+	 */
+	protected void rollbackPending(Connection conn, Savepoint sp)
+	{
+		health.suspect();
+		if (sp != null)
+		{
+			try
+			{
+				conn.rollback(sp);
+				this.flushPending(conn);
+				return;
+			}
+			catch (SQLException e)
 			{
-				break;
+				printError(e);
 			}
 		}
-		return bads;
+		try
+		{
+			conn.rollback();
+		}
+		catch (SQLException e)
+		{
+			printError(e);
+		}
+		this.dropPending();
 	}
 
 	@Override
@@ -604,6 +926,12 @@ public class LoadWorker implements Runnable
 					lock.unlock();
 				}
 
+				if (this.getMaster().isPipeline())
+				{
+					this.runPipeline();
+					break;
+				}
+
 				// synchronized (this)
 				// {
 				// if (!this.isStarted())
@@ -639,15 +967,27 @@ public class LoadWorker implements Runnable
 				// log("wakeup");
 				this.getMaster().reportReading(this);
 
-				badReads = this.readRecords(this.getMaster().getParser(), this.getRecords());
+				RecordParser parser = this.getParser();
 
-				this.getMaster().reportRead(this);
+				badReads = this.readRecords(parser, this.getRecords());
+
+				this.setParser(null);
+
+				this.getMaster().reportRead(this, parser);
 
 				// log("batch begin");
+				long ts = System.nanoTime();
 				int[] result = this.doBatch(this.getConnection(), this.getTemplate(), this.getRecords());
 				// log("batch end");
 
-				this.getMaster().reportLoaded(this, result[0] + badReads, result[1] + badReads);
+				ts = System.nanoTime() - ts;
+
+				if (result[1] == 0)
+				{
+					this.tuneBatchSize(result[0], ts);
+				}
+
+				this.getMaster().reportLoaded(this, result[0] + badReads, result[1] + badReads, ts);
 			}
 		}
 		catch (Throwable ex)
@@ -665,8 +1005,49 @@ public class LoadWorker implements Runnable
 		}
 	}
 
+	/**
+	 * Keep taking the ready batches from the master and loading them until no
+	 * more batch would come.
+	 */
+	protected void runPipeline()
+	{
+		LoadMaster master = this.getMaster();
+		RecordBatch batch = null;
+		int[] result = null;
+		long ts = 0L;
+
+		while (!this.isStopping() && (batch = master.takeBatch()) != null)
+		{
+			try
+			{
+				ts = System.nanoTime();
+				result = this.doBatch(this.getConnection(), this.getTemplate(), batch);
+				ts = System.nanoTime() - ts;
+				if (result[1] == 0)
+				{
+					this.tuneBatchSize(result[0], ts);
+				}
+				master.reportLoaded(this, result[0], result[1], ts);
+			}
+			finally
+			{
+				master.recycleBatch(batch);
+			}
+		}
+	}
+
+	protected LoadWorker setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+		return this;
+	}
+
 	protected LoadWorker setConnection(Connection connection) throws SQLException
 	{
+		if (this.engine != null)
+		{
+			this.engine.close();
+		}
 		this.connection = connection;
 		if (connection != null)
 		{
@@ -687,7 +1068,13 @@ public class LoadWorker implements Runnable
 		return this;
 	}
 
-	protected LoadWorker setRecords(LinkedList<Record> records)
+	protected LoadWorker setParser(RecordParser parser)
+	{
+		this.parser = parser;
+		return this;
+	}
+
+	protected LoadWorker setRecords(RecordBatch records)
 	{
 		this.records = records;
 		return this;
@@ -728,6 +1115,42 @@ public class LoadWorker implements Runnable
 	// return this;
 	// }
 
+	/**
+	 * Split the records into chunks whose rewrite statements could be reused
+	 * and stay within the limits of rewriteParams and rewriteBytes. If
+	 * rewriteChunked is enabled, a part which is neither of the full batch size
+	 * nor of the most rows allowed nor of any size already prepared would be
+	 * split further into chunks of power-of-two sizes, largest first.
+	 */
+	protected List<List<Record>> splitRewrite(InsertTemplate template, List<Record> records)
+	{
+		List<List<Record>> chunks = new LinkedList<List<Record>>();
+
+		int most = this.getRewriteRowsMost(template), rows = 0, from = 0, size = 0;
+
+		for (List<Record> part : this.limitRewrite(template, records))
+		{
+			rows = part.size();
+
+			if (!this.getMaster().isRewriteChunked() || rows == this.getBatchSize() || rows == most
+					|| this.rewriteStatements.containsKey(rows))
+			{
+				chunks.add(part);
+				continue;
+			}
+
+			from = 0;
+			while (from < rows)
+			{
+				size = Integer.highestOneBit(rows - from);
+				chunks.add(part.subList(from, from + size));
+				from += size;
+			}
+		}
+
+		return chunks;
+	}
+
 	public Thread start()
 	{
 		Thread t = null;
@@ -740,7 +1163,7 @@ public class LoadWorker implements Runnable
 			{
 				return t;
 			}
-			t = new Thread(this);
+			t = this.getMaster().newThread(this);
 			this.setThread(t);
 		}
 		finally
@@ -784,24 +1207,24 @@ public class LoadWorker implements Runnable
 		}
 	}
 
-	protected int[] trackBads(Connection conn, InsertTemplate template, LinkedList<Record> bads)
+	protected int[] trackBads(Connection conn, InsertTemplate template, List<Record> bads)
 	{
 		int[] index = template.getIndexes();
 		int total = bads.size(), good = 0;
 		try
 		{
+			this.flushPending(conn);
+
 			conn.setAutoCommit(true);
 
 			PreparedStatement ps = this.ensureStatement();
 			try
 			{
-				Record rec = null;
-				while (!bads.isEmpty())
+				for (Record rec : bads)
 				{
-					rec = bads.removeFirst();
 					try
 					{
-						this.addUpdate(ps, index, rec.data);
+						this.addUpdate(ps, index, rec);
 						good++;
 					}
 					catch (SQLException err)
@@ -837,6 +1260,33 @@ public class LoadWorker implements Runnable
 		}
 	}
 
+	/**
+	 * Tune the batch size toward the latency expected by the rows and time of
+	 * the last batch. The step is damped and bounded within the limits.
+	 */
+	protected void tuneBatchSize(int rows, long elapsed)
+	{
+		LoadMaster master = this.getMaster();
+		long target = master.getBatchLatency();
+		if (target <= 0 || rows <= 0 || elapsed <= 0)
+		{
+			return;
+		}
+
+		int current = this.getBatchSize();
+		double ideal = rows * (target * 1e6) / elapsed;
+		double next = current + (ideal - current) / 2;
+		next = Math.max(current / 2.0, Math.min(current * 2.0, next));
+		int size = (int) Math.max(master.getBatchSizeMin(), Math.min(master.getBatchSizeMax(), next));
+		size = Math.max(master.getBatchSizeMin(), quantize(size));
+
+		if (size != current)
+		{
+			this.setBatchSize(size);
+			master.reportBatchSize(this, size);
+		}
+	}
+
 	public LoadWorker waitForStarted()
 	{
 		lock.lock();
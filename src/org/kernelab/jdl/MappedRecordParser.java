@@ -0,0 +1,308 @@
+package org.kernelab.jdl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A RecordParser which maps the local file into memory and finds the column
+ * and record terminators directly on the encoded bytes. Only the cells which
+ * are needed would be decoded, straight from the mapped bytes into the arena
+ * of RecordBatch.<br />
+ * The charset must never produce the bytes of terminators inside a multibyte
+ * character, which holds for UTF-8 and the single byte charsets compatible
+ * with ASCII, but not for GBK or Shift_JIS whose trail bytes could be ASCII.
+ * So only such charsets are accepted, see {@link #isSupported(Charset)}.
+ */
+public class MappedRecordParser extends RecordParser
+{
+	public static final int		DEFAULT_WINDOW	= 1 << 26;
+
+	private File				source;
+
+	private RandomAccessFile	file;
+
+	private FileChannel			channel;
+
+	private Charset				charset;
+
+	private CharsetDecoder		decoder;
+
+	private byte[]				recordTerm;
+
+	private byte[]				columnTerm;
+
+	private MappedByteBuffer	buffer;
+
+	private long				base;
+
+	private long				limit;
+
+	private int					window			= DEFAULT_WINDOW;
+
+	private long				position;
+
+	private long				end;
+
+	/**
+	 * Tell whether the terminators could be found on the bytes encoded by the
+	 * charset, that is UTF-8 or a single byte charset compatible with ASCII.
+	 */
+	public static boolean isSupported(Charset charset)
+	{
+		if ("UTF-8".equals(charset.name()))
+		{
+			return true;
+		}
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f)
+		{
+			return false;
+		}
+		char[] chars = new char[128];
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++)
+		{
+			chars[i] = (char) i;
+			ascii[i] = (byte) i;
+		}
+		return Arrays.equals(new String(chars).getBytes(charset), ascii);
+	}
+
+	@Override
+	protected void close()
+	{
+		this.buffer = null;
+		this.source = null;
+		if (this.file != null)
+		{
+			try
+			{
+				this.file.close();
+			}
+			catch (Exception e)
+			{
+			}
+			this.file = null;
+			this.channel = null;
+		}
+	}
+
+	protected void decode(long from, long to, RecordBatch batch, int column)
+	{
+		if (!this.isColumnUsed(column))
+		{
+			batch.addNull();
+			return;
+		}
+		buffer.limit((int) (to - base));
+		buffer.position((int) (from - base));
+		try
+		{
+			batch.addCell(buffer, decoder);
+		}
+		finally
+		{
+			buffer.clear();
+		}
+	}
+
+	public Charset getCharset()
+	{
+		return charset;
+	}
+
+	public int getWindow()
+	{
+		return window;
+	}
+
+	@Override
+	protected boolean isExhausted()
+	{
+		return position >= end;
+	}
+
+	protected boolean matches(long pos, byte[] term)
+	{
+		if (pos + term.length > end)
+		{
+			return false;
+		}
+		int at = (int) (pos - base);
+		for (int i = 1; i < term.length; i++)
+		{
+			if (buffer.get(at + i) != term[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Map the window which begins at the given position. If the window would
+	 * not move forward, it is enlarged so that a cell longer than the window
+	 * could still be held.
+	 */
+	protected void mapWindow(long from) throws IOException
+	{
+		long size = Math.min(window, end - from);
+		if (buffer != null && from == base)
+		{
+			size = Math.min(Math.max(limit - base, 1L) * 2, end - from);
+			size = Math.min(size, Integer.MAX_VALUE);
+		}
+		this.buffer = channel.map(MapMode.READ_ONLY, from, size);
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.base = from;
+		this.limit = from + size;
+	}
+
+	/**
+	 * Open the file on the first parsing, return false if it has been closed.
+	 */
+	protected boolean open() throws IOException
+	{
+		if (this.source == null)
+		{
+			return false;
+		}
+		this.file = new RandomAccessFile(this.source, "r");
+		this.channel = this.file.getChannel();
+		return true;
+	}
+
+	@Override
+	protected boolean parseRecord(RecordBatch batch) throws IOException
+	{
+		if (position >= end || (this.channel == null && !this.open()))
+		{
+			this.close();
+			return false;
+		}
+
+		if (recordTerm == null)
+		{
+			recordTerm = new String(this.getRecordTerminator()).getBytes(charset);
+			columnTerm = new String(this.getColumnTerminator()).getBytes(charset);
+		}
+
+		batch.begin(this.newId());
+		int columns = this.getColumnsNeed(), cells = 0;
+		boolean needCols = columns != 0;
+		byte colHead = columnTerm[0], recHead = recordTerm[0], b = 0;
+		int reach = Math.max(columnTerm.length, recordTerm.length);
+
+		long pos = position, from = position, scan = 0L;
+		int hit = -1;
+
+		if (buffer == null || pos < base || pos >= limit)
+		{
+			this.mapWindow(pos);
+		}
+
+		while (true)
+		{
+			if (pos >= end)
+			{
+				if (needCols)
+				{
+					this.decode(from, end, batch, cells);
+				}
+				position = end;
+				break;
+			}
+
+			if (pos + reach > limit && limit < end)
+			{
+				this.mapWindow(needCols ? from : pos);
+				continue;
+			}
+
+			scan = limit < end ? limit - reach + 1 : end;
+			hit = DelimiterScanner.indexOf(buffer, (int) (pos - base), (int) (scan - base), colHead, recHead);
+			if (hit < 0)
+			{
+				pos = scan;
+				continue;
+			}
+
+			pos = base + hit;
+			b = buffer.get(hit);
+
+			if (b == colHead && this.matches(pos, columnTerm))
+			{
+				if (needCols)
+				{
+					this.decode(from, pos, batch, cells);
+					if (columns > 0 && ++cells >= columns)
+					{
+						needCols = false;
+					}
+				}
+				pos += columnTerm.length;
+				from = pos;
+			}
+			else if (b == recHead && this.matches(pos, recordTerm))
+			{
+				if (needCols)
+				{
+					this.decode(from, pos, batch, cells);
+				}
+				position = pos + recordTerm.length;
+				break;
+			}
+			else
+			{
+				pos++;
+			}
+		}
+
+		batch.end();
+
+		return true;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the charset is not {@link #isSupported(Charset)}.
+	 */
+	public MappedRecordParser setCharset(String charset)
+	{
+		Charset cs = Charset.forName(charset);
+		if (!isSupported(cs))
+		{
+			throw new IllegalArgumentException("Charset " + charset + " could not be parsed as mapped file");
+		}
+		this.charset = cs;
+		this.decoder = this.charset.newDecoder() //
+				.onMalformedInput(CodingErrorAction.REPLACE) //
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.recordTerm = null;
+		this.columnTerm = null;
+		return this;
+	}
+
+	public MappedRecordParser setFile(File file, long start, long end) throws IOException
+	{
+		this.close();
+		this.source = file;
+		this.position = start;
+		this.end = Math.min(end, file.length());
+		return this;
+	}
+
+	public MappedRecordParser setWindow(int window)
+	{
+		this.window = Math.max(window, 1024);
+		return this;
+	}
+}
@@ -0,0 +1,400 @@
+package org.kernelab.jdl;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The dialect of MySQL and MariaDB, which could load by LOAD DATA LOCAL INFILE
+ * on the server side, feeding the records through the local infile stream of
+ * the driver. The driver is reached by reflection so that it is not needed to
+ * build. Both the driver and the server must allow local infile, so this
+ * engine is only used when asked.
+ */
+public class MysqlDialect extends GenericDialect
+{
+	/**
+	 * Stream the records of each batch in the text format of LOAD DATA, the
+	 * load items and SET expressions are sent as given so that the server
+	 * evaluates them. The server takes the rows which could not be loaded as
+	 * warnings, the warning of a skipped row which tells its row is traced to
+	 * the record, but the rows skipped without one, such as duplicate keys,
+	 * are only counted as bad records. The warnings of the rows loaded with
+	 * adjusted values are printed but not taken as bad records.
+	 */
+	public static class InfileEngine extends TransactionEngine
+	{
+		/**
+		 * The row number which the server tells in a warning, counted from 1
+		 * in the stream.
+		 */
+		protected static final Pattern		ROW			= Pattern.compile("(?i)\\brow (\\d{1,9})\\b");
+
+		/**
+		 * The error codes of the warnings for the rows skipped by the server,
+		 * such as duplicate keys, foreign keys, partitions and check
+		 * constraints.
+		 */
+		protected static final Set<Integer>	REJECTS		= new HashSet<Integer>(
+				Arrays.asList(1062, 1452, 1526, 1748, 3819));
+
+		protected static final Charset		UTF8		= Charset.forName("UTF-8");
+
+		/**
+		 * The name of the method to set the local infile stream.
+		 */
+		public static final String			SET_STREAM	= "setLocalInfileInputStream";
+
+		/**
+		 * The warnings not traced which are printed at most for each batch.
+		 */
+		public static final int				WARNINGS	= 3;
+
+		private String					load;
+
+		private Method					setStream;
+
+		protected static void escape(StringBuilder buf, String value)
+		{
+			if (value == null)
+			{
+				buf.append("\\N");
+				return;
+			}
+			char c = 0;
+			for (int i = 0; i < value.length(); i++)
+			{
+				c = value.charAt(i);
+				switch (c)
+				{
+					case '\\':
+						buf.append("\\\\");
+						break;
+					case '\t':
+						buf.append("\\t");
+						break;
+					case '\n':
+						buf.append("\\n");
+						break;
+					case '\r':
+						buf.append("\\r");
+						break;
+					case '\0':
+						buf.append("\\0");
+						break;
+					default:
+						buf.append(c);
+				}
+			}
+		}
+
+		protected static String statement(InsertTemplate template)
+		{
+			StringBuilder buf = new StringBuilder();
+			buf.append("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ").append(template.getTable());
+			buf.append(" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'");
+			buf.append(" LINES TERMINATED BY '\\n' (");
+			String[] items = template.getItems();
+			for (int i = 0; i < items.length; i++)
+			{
+				if (i > 0)
+				{
+					buf.append(',');
+				}
+				buf.append(items[i]);
+			}
+			buf.append(')');
+			Map<String, String> sets = template.getSets();
+			if (sets != null && !sets.isEmpty())
+			{
+				boolean first = true;
+				for (Entry<String, String> pair : sets.entrySet())
+				{
+					buf.append(first ? " SET " : ",");
+					buf.append(pair.getKey()).append('=').append(pair.getValue());
+					first = false;
+				}
+			}
+			return buf.toString();
+		}
+
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			int columns = template.getItems().length;
+			StringBuilder buf = new StringBuilder();
+			for (Record record : records)
+			{
+				for (int i = 0; i < columns; i++)
+				{
+					if (i > 0)
+					{
+						buf.append('\t');
+					}
+					escape(buf, i < record.columns() ? record.get(i) : null);
+				}
+				buf.append('\n');
+			}
+
+			Statement st = conn.createStatement();
+			try
+			{
+				this.open(st, template, new ByteArrayInputStream(buf.toString().getBytes(UTF8)));
+				int rows = st.executeUpdate(load);
+				int bads = Math.max(records.size() - rows, 0);
+				int untraced = bads - this.printWarnings(worker, st.getWarnings(), records, bads);
+				if (untraced > 0)
+				{
+					worker.getMaster().printError(new SQLWarning(untraced + " rows of the batch from Rec#"
+							+ records.get(0).getLabel() + " were skipped by the server but could not be traced"));
+				}
+				return bads;
+			}
+			finally
+			{
+				st.close();
+			}
+		}
+
+		protected void open(Statement st, InsertTemplate template, InputStream in) throws SQLException
+		{
+			if (load == null)
+			{
+				load = statement(template);
+			}
+
+			Method method = setStream;
+			if (method == null || !method.getDeclaringClass().isInstance(st))
+			{
+				try
+				{
+					method = st.getClass().getMethod(SET_STREAM, InputStream.class);
+					method.setAccessible(true);
+				}
+				catch (Exception e)
+				{
+					throw new SQLException("LOAD DATA LOCAL INFILE is not supported by the driver", e);
+				}
+				setStream = method;
+			}
+
+			try
+			{
+				method.invoke(st, in);
+			}
+			catch (InvocationTargetException e)
+			{
+				Throwable t = e.getTargetException();
+				if (t instanceof SQLException)
+				{
+					throw (SQLException) t;
+				}
+				throw new SQLException(t.getLocalizedMessage(), t);
+			}
+			catch (Exception e)
+			{
+				throw new SQLException(e.getLocalizedMessage(), e);
+			}
+		}
+
+		/**
+		 * Print the warnings of the batch. The warning which rejects a row and
+		 * tells its row is printed as the error of that record, each record
+		 * once and at most bads records. The others are printed as warnings,
+		 * with the record if told.
+		 * 
+		 * @return the number of records traced.
+		 */
+		protected int printWarnings(LoadWorker worker, SQLWarning warn, List<Record> records, int bads)
+		{
+			Set<Integer> traced = new HashSet<Integer>();
+			int others = 0, row = 0;
+			Matcher matcher = null;
+			for (; warn != null; warn = warn.getNextWarning())
+			{
+				matcher = ROW.matcher(String.valueOf(warn.getMessage()));
+				row = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+				if (row < 1 || row > records.size())
+				{
+					row = 0;
+				}
+				if (row > 0 && REJECTS.contains(warn.getErrorCode()) && traced.size() < bads && traced.add(row))
+				{
+					worker.logBad(records.get(row - 1), warn);
+				}
+				else if (others++ < WARNINGS)
+				{
+					worker.getMaster().printError(row > 0 ? new SQLWarning("Rec#" + records.get(row - 1).getLabel()
+							+ ": " + warn.getMessage(), warn.getSQLState(), warn.getErrorCode()) : warn);
+				}
+			}
+			if (others > WARNINGS)
+			{
+				worker.getMaster().printError(new SQLWarning((others - WARNINGS) + " more warnings were not printed"));
+			}
+			return traced.size();
+		}
+	}
+
+	public static final String ENGINE_INFILE = "infile";
+
+	@Override
+	public boolean accepts(String url)
+	{
+		return url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:");
+	}
+
+	@Override
+	public String deferIndexSql(SecondaryIndex index)
+	{
+		return "DROP INDEX " + index.quote(index.getName()) + " ON " + index.getTable();
+	}
+
+	/**
+	 * List the indexes with their definitions built by SHOW INDEX, so that the
+	 * prefix lengths, the order and the FULLTEXT, SPATIAL or HASH type of each
+	 * index are kept. The functional and invisible indexes are not deferred
+	 * since they could not be created again as they were.
+	 */
+	@Override
+	public List<SecondaryIndex> listIndexes(Connection conn, String table) throws SQLException
+	{
+		List<SecondaryIndex> indexes = super.listIndexes(conn, table);
+		if (indexes.isEmpty())
+		{
+			return indexes;
+		}
+
+		String quote = indexes.get(0).getQuote();
+		Map<String, StringBuilder> columns = new HashMap<String, StringBuilder>();
+		Map<String, String> types = new HashMap<String, String>();
+		Map<String, String> comments = new HashMap<String, String>();
+		Set<String> refused = new HashSet<String>();
+
+		Statement st = conn.createStatement();
+		try
+		{
+			ResultSet rs = st.executeQuery("SHOW INDEX FROM " + table);
+			try
+			{
+				boolean visibility = false;
+				ResultSetMetaData meta = rs.getMetaData();
+				for (int i = 1; i <= meta.getColumnCount(); i++)
+				{
+					visibility |= "Visible".equalsIgnoreCase(meta.getColumnLabel(i));
+				}
+
+				String key = null, column = null;
+				StringBuilder buf = null;
+				int sub = 0;
+				while (rs.next())
+				{
+					key = rs.getString("Key_name");
+					column = rs.getString("Column_name");
+					if (column == null || (visibility && "NO".equalsIgnoreCase(rs.getString("Visible"))))
+					{
+						refused.add(key);
+						continue;
+					}
+					buf = columns.get(key);
+					if (buf == null)
+					{
+						buf = new StringBuilder();
+						columns.put(key, buf);
+						types.put(key, String.valueOf(rs.getString("Index_type")).toUpperCase());
+						comments.put(key, rs.getString("Index_comment"));
+					}
+					else
+					{
+						buf.append(", ");
+					}
+					buf.append(quote).append(column).append(quote);
+					sub = rs.getInt("Sub_part");
+					if (!rs.wasNull())
+					{
+						buf.append('(').append(sub).append(')');
+					}
+					if ("D".equalsIgnoreCase(rs.getString("Collation")))
+					{
+						buf.append(" DESC");
+					}
+				}
+			}
+			finally
+			{
+				rs.close();
+			}
+		}
+		finally
+		{
+			st.close();
+		}
+
+		Iterator<SecondaryIndex> iter = indexes.iterator();
+		SecondaryIndex index = null;
+		String type = null, comment = null;
+		StringBuilder buf = null;
+		while (iter.hasNext())
+		{
+			index = iter.next();
+			type = types.get(index.getName());
+			if (type == null || refused.contains(index.getName()))
+			{
+				iter.remove();
+				continue;
+			}
+			buf = new StringBuilder("CREATE ");
+			if ("FULLTEXT".equals(type))
+			{
+				buf.append("FULLTEXT ");
+			}
+			else if ("SPATIAL".equals(type) || "RTREE".equals(type))
+			{
+				buf.append("SPATIAL ");
+			}
+			buf.append("INDEX ").append(index.quote(index.getName())).append(" ON ").append(index.getTable());
+			buf.append(" (").append(columns.get(index.getName())).append(')');
+			if ("BTREE".equals(type) || "HASH".equals(type))
+			{
+				buf.append(" USING ").append(type);
+			}
+			comment = comments.get(index.getName());
+			if (comment != null && comment.length() > 0)
+			{
+				buf.append(" COMMENT '").append(comment.replace("\\", "\\\\").replace("'", "''")).append('\'');
+			}
+			index.setDefinition(buf.toString());
+		}
+
+		return indexes;
+	}
+
+	@Override
+	public LoadEngine newEngine(LoadMaster master)
+	{
+		if (ENGINE_INFILE.equalsIgnoreCase(master.getEngine()))
+		{
+			return new InfileEngine();
+		}
+		return super.newEngine(master);
+	}
+}
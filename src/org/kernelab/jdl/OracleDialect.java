@@ -0,0 +1,243 @@
+package org.kernelab.jdl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The dialect of Oracle, which does not accept the multi-row VALUES, so the
+ * rewrite mode inserts by INSERT ALL ... SELECT FROM DUAL instead. The JDBC
+ * batch of the driver is sent as array DML already. With directPath, the
+ * inserts are hinted by APPEND_VALUES or APPEND and each batch is committed
+ * on its own, since a table could not be modified again in the transaction
+ * which inserted into it by direct path. The deferred indexes are made
+ * unusable and rebuilt.
+ */
+public class OracleDialect extends GenericDialect
+{
+	/**
+	 * Insert the records of each batch by JDBC batch with the APPEND_VALUES
+	 * hint.
+	 */
+	public static class AppendEngine extends TransactionEngine
+	{
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			int[] index = template.getIndexes();
+			PreparedStatement ps = conn.prepareStatement("INSERT /*+ APPEND_VALUES */ INTO " + template.getTable()
+					+ " (" + template.getTarget() + ") VALUES (" + template.getValues() + ")");
+			try
+			{
+				for (Record record : records)
+				{
+					for (int i = 0; i < index.length; i++)
+					{
+						worker.bind(ps, i + 1, i, record.get(index[i]));
+					}
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				return 0;
+			}
+			finally
+			{
+				ps.close();
+			}
+		}
+
+		@Override
+		protected boolean isCommitEach()
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Insert the records of each batch by INSERT ALL statements, each of which
+	 * carries as many rows as the limits allow. The statement of full rows is
+	 * prepared once for each batch and executed for every chunk. The APPEND
+	 * hint is given only if the batch fits in one statement, since a second
+	 * direct path insert in the same transaction would fail with ORA-12838.
+	 */
+	public static class InsertAllEngine extends TransactionEngine
+	{
+		/**
+		 * The most columns which one INSERT ALL statement could insert.
+		 */
+		public static final int	COLUMNS_MOST	= 999;
+
+		private final boolean	direct;
+
+		private int				most			= 0;
+
+		public InsertAllEngine(boolean direct)
+		{
+			this.direct = direct;
+		}
+
+		protected void bind(LoadWorker worker, PreparedStatement ps, int[] index, List<Record> records, int from,
+				int to) throws SQLException
+		{
+			int position = 1;
+			for (int r = from; r < to; r++)
+			{
+				Record record = records.get(r);
+				for (int i = 0; i < index.length; i++)
+				{
+					worker.bind(ps, position++, i, record.get(index[i]));
+				}
+			}
+		}
+
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			int[] index = template.getIndexes();
+			if (most == 0)
+			{
+				most = this.getRowsMost(worker.getMaster(), template);
+			}
+
+			int total = records.size(), rows = 0;
+			boolean append = direct && total <= most;
+			PreparedStatement full = null, ps = null;
+			try
+			{
+				for (int from = 0; from < total; from += rows)
+				{
+					rows = Math.min(most, total - from);
+					if (rows == most)
+					{
+						if (full == null)
+						{
+							full = conn.prepareStatement(this.getInsert(template, rows, append));
+						}
+						ps = full;
+					}
+					else
+					{
+						ps = conn.prepareStatement(this.getInsert(template, rows, append));
+					}
+					try
+					{
+						this.bind(worker, ps, index, records, from, from + rows);
+						ps.executeUpdate();
+					}
+					finally
+					{
+						if (ps != full)
+						{
+							ps.close();
+						}
+					}
+				}
+				return 0;
+			}
+			finally
+			{
+				if (full != null)
+				{
+					full.close();
+				}
+			}
+		}
+
+		protected String getInsert(InsertTemplate template, int rows, boolean append)
+		{
+			String into = " INTO " + template.getTable() + " (" + template.getTarget() + ") VALUES ("
+					+ template.getValues() + ")";
+			StringBuilder buf = new StringBuilder(into.length() * rows + 40);
+			buf.append(append ? "INSERT /*+ APPEND */ ALL" : "INSERT ALL");
+			for (int i = 0; i < rows; i++)
+			{
+				buf.append(into);
+			}
+			buf.append(" SELECT 1 FROM DUAL");
+			return buf.toString();
+		}
+
+		/**
+		 * Get the most rows of one statement, limited by the parameters and
+		 * the columns.
+		 */
+		protected int getRowsMost(LoadMaster master, InsertTemplate template)
+		{
+			int params = Math.max(template.getIndexes().length, 1);
+			int columns = Math.max(template.getTarget().split(",").length, 1);
+			int most = COLUMNS_MOST / columns;
+			if (master.getRewriteParams() > 0)
+			{
+				most = Math.min(most, master.getRewriteParams() / params);
+			}
+			return Math.max(most, 1);
+		}
+
+		@Override
+		protected boolean isCommitEach()
+		{
+			return direct;
+		}
+	}
+
+	public static final String		ENGINE_INSERT_ALL	= "insertall";
+
+	/**
+	 * The sequence would be evaluated once for all rows of an INSERT ALL.
+	 */
+	protected static final Pattern	NEXTVAL				= Pattern.compile("(?i)\\.\\s*NEXTVAL\\b");
+
+	@Override
+	public boolean accepts(String url)
+	{
+		return url.startsWith("jdbc:oracle:");
+	}
+
+	/**
+	 * The index is made unusable instead of dropped, which would be skipped
+	 * by the inserts and keeps its definition in the database.
+	 */
+	@Override
+	public String deferIndexSql(SecondaryIndex index)
+	{
+		return "ALTER INDEX " + index.getQualifiedName() + " UNUSABLE";
+	}
+
+	@Override
+	protected boolean isDeferrable(SecondaryIndex index)
+	{
+		return true;
+	}
+
+	/**
+	 * Create the INSERT ALL engine if named by insertall or rewrite, or if not
+	 * named but rewriteBatch is enabled. Otherwise, or if the values take the
+	 * NEXTVAL of sequences, the JDBC batch is used.
+	 */
+	@Override
+	public LoadEngine newEngine(LoadMaster master)
+	{
+		String engine = master.getEngine();
+		boolean rewrite = ENGINE_INSERT_ALL.equalsIgnoreCase(engine) || ENGINE_REWRITE.equalsIgnoreCase(engine)
+				|| (engine == null && master.isRewriteBatch());
+		if (rewrite && !NEXTVAL.matcher(master.getTemplate().getValues()).find())
+		{
+			return new InsertAllEngine(master.isDirectPath());
+		}
+		if (master.isDirectPath())
+		{
+			return new AppendEngine();
+		}
+		return new BatchEngine();
+	}
+
+	@Override
+	public String rebuildIndexSql(SecondaryIndex index)
+	{
+		return "ALTER INDEX " + index.getQualifiedName() + " REBUILD";
+	}
+}
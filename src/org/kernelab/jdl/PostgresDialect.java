@@ -0,0 +1,513 @@
+package org.kernelab.jdl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dialect of PostgreSQL, which loads by COPY FROM STDIN through the
+ * CopyManager of the driver, or by inserting from unnest() of arrays. The
+ * driver is reached by reflection so that it is not needed to build. The
+ * template with SET expressions which need the server to evaluate falls back
+ * to the generic engines.
+ */
+public class PostgresDialect extends GenericDialect
+{
+	/**
+	 * Stream the records of each batch in COPY text format. If typedBind is
+	 * enabled, the values which the binders take as NULL are sent as NULL.
+	 */
+	public static class CopyEngine extends TransactionEngine
+	{
+		/**
+		 * The chars buffered before written to the COPY stream.
+		 */
+		public static final int			FLUSH_SIZE	= 1 << 16;
+
+		protected static final Charset	UTF8		= Charset.forName("UTF-8");
+
+		private String					copy;
+
+		private Class<?>				pgConnection;
+
+		private Method					getCopyAPI;
+
+		private Method					copyIn;
+
+		private Method					writeToCopy;
+
+		private Method					endCopy;
+
+		private Method					cancelCopy;
+
+		private Method					isActive;
+
+		protected static void escape(StringBuilder buf, String value)
+		{
+			if (value == null)
+			{
+				buf.append("\\N");
+				return;
+			}
+			char c = 0;
+			for (int i = 0; i < value.length(); i++)
+			{
+				c = value.charAt(i);
+				switch (c)
+				{
+					case '\\':
+						buf.append("\\\\");
+						break;
+					case '\t':
+						buf.append("\\t");
+						break;
+					case '\n':
+						buf.append("\\n");
+						break;
+					case '\r':
+						buf.append("\\r");
+						break;
+					default:
+						buf.append(c);
+				}
+			}
+		}
+
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			ColumnBinder[] binders = worker.getBinders();
+			Object in = this.open(conn, template);
+			try
+			{
+				int[] index = template.getIndexes();
+				StringBuilder buf = new StringBuilder(FLUSH_SIZE + 1024);
+				String value = null;
+				for (Record record : records)
+				{
+					for (int i = 0; i < index.length; i++)
+					{
+						if (i > 0)
+						{
+							buf.append('\t');
+						}
+						value = record.get(index[i]);
+						escape(buf, binders != null && binders[i].isNull(value) ? null : value);
+					}
+					buf.append('\n');
+					if (buf.length() >= FLUSH_SIZE)
+					{
+						this.write(in, buf);
+					}
+				}
+				this.write(in, buf);
+				invoke(endCopy, in);
+				in = null;
+				return 0;
+			}
+			finally
+			{
+				if (in != null)
+				{
+					try
+					{
+						if (Boolean.TRUE.equals(invoke(isActive, in)))
+						{
+							invoke(cancelCopy, in);
+						}
+					}
+					catch (SQLException e)
+					{
+					}
+				}
+			}
+		}
+
+		protected static Object invoke(Method method, Object target, Object... args) throws SQLException
+		{
+			try
+			{
+				return method.invoke(target, args);
+			}
+			catch (InvocationTargetException e)
+			{
+				Throwable t = e.getTargetException();
+				if (t instanceof SQLException)
+				{
+					throw (SQLException) t;
+				}
+				throw new SQLException(t.getLocalizedMessage(), t);
+			}
+			catch (Exception e)
+			{
+				throw new SQLException(e.getLocalizedMessage(), e);
+			}
+		}
+
+		protected Object open(Connection conn, InsertTemplate template) throws SQLException
+		{
+			if (copy == null)
+			{
+				try
+				{
+					ClassLoader loader = conn.getClass().getClassLoader();
+					this.pgConnection = Class.forName("org.postgresql.PGConnection", true, loader);
+					Class<?> manager = Class.forName("org.postgresql.copy.CopyManager", true, loader);
+					Class<?> copyIn = Class.forName("org.postgresql.copy.CopyIn", true, loader);
+					this.getCopyAPI = pgConnection.getMethod("getCopyAPI");
+					this.copyIn = manager.getMethod("copyIn", String.class);
+					this.writeToCopy = copyIn.getMethod("writeToCopy", byte[].class, int.class, int.class);
+					this.endCopy = copyIn.getMethod("endCopy");
+					this.cancelCopy = copyIn.getMethod("cancelCopy");
+					this.isActive = copyIn.getMethod("isActive");
+				}
+				catch (Exception e)
+				{
+					throw new SQLException("COPY is not supported by the driver", e);
+				}
+				copy = "COPY " + template.getTable() + " (" + template.getTarget() + ") FROM STDIN";
+			}
+
+			Object api = invoke(getCopyAPI, conn.unwrap(pgConnection));
+			return invoke(copyIn, api, copy);
+		}
+
+		protected void write(Object in, StringBuilder buf) throws SQLException
+		{
+			if (buf.length() > 0)
+			{
+				byte[] bytes = buf.toString().getBytes(UTF8);
+				invoke(writeToCopy, in, bytes, 0, bytes.length);
+				buf.setLength(0);
+			}
+		}
+	}
+
+	/**
+	 * Insert the records of each batch by one statement which binds each
+	 * parameter of the template as an array and selects the rows from
+	 * unnest(). So the statement has the same parameters for any batch size,
+	 * it is prepared once for each connection of the worker. The elements
+	 * follow the rules of typedBind as the binders do, otherwise they are sent
+	 * as text.
+	 */
+	public static class UnnestEngine extends TransactionEngine
+	{
+		private String				insert;
+
+		private String[]			types;
+
+		private ColumnBinder[]		dates;
+
+		/**
+		 * The connection on which the statement is prepared.
+		 */
+		private Connection			connection;
+
+		private PreparedStatement	statement;
+
+		/**
+		 * Get the SQL type of the array elements for the given type name of a
+		 * column reported by the driver.
+		 */
+		protected static String element(String type)
+		{
+			if (type == null || type.startsWith("_"))
+			{
+				return "text";
+			}
+			else if ("serial".equalsIgnoreCase(type))
+			{
+				return "int4";
+			}
+			else if ("bigserial".equalsIgnoreCase(type))
+			{
+				return "int8";
+			}
+			else if ("smallserial".equalsIgnoreCase(type))
+			{
+				return "int2";
+			}
+			else
+			{
+				return type;
+			}
+		}
+
+		/**
+		 * Replace the parameters of the values with the columns of unnest, the
+		 * question marks in the quoted literals are kept.
+		 */
+		protected static String select(String values)
+		{
+			StringBuilder buf = new StringBuilder(values.length() * 2);
+			boolean quoted = false;
+			int param = 0;
+			char c = 0;
+			for (int i = 0; i < values.length(); i++)
+			{
+				c = values.charAt(i);
+				if (c == '\'')
+				{
+					quoted = !quoted;
+				}
+				if (c == '?' && !quoted)
+				{
+					buf.append("u.c").append(++param);
+				}
+				else
+				{
+					buf.append(c);
+				}
+			}
+			return buf.toString();
+		}
+
+		@Override
+		public void close()
+		{
+			if (statement != null)
+			{
+				try
+				{
+					statement.close();
+				}
+				catch (SQLException e)
+				{
+				}
+			}
+			statement = null;
+			connection = null;
+		}
+
+		/**
+		 * Get the element of the value, which is NULL if the binder takes it
+		 * as NULL, or the date and time formatted by the dateFormat. The value
+		 * is kept as is if binders are null.
+		 */
+		protected Object element(int param, String value, ColumnBinder[] binders)
+		{
+			if (binders == null || value == null)
+			{
+				return value;
+			}
+			if (binders[param].isNull(value))
+			{
+				return null;
+			}
+			if (dates[param] != null)
+			{
+				try
+				{
+					long time = dates[param].parse(value);
+					return dates[param].getType() == Types.TIME ? new Time(time).toString()
+							: new Timestamp(time).toString();
+				}
+				catch (IllegalArgumentException e)
+				{
+				}
+			}
+			return value;
+		}
+
+		@Override
+		protected int execute(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+				throws SQLException
+		{
+			if (insert == null)
+			{
+				this.prepare(worker.getMaster(), conn, template);
+			}
+
+			ColumnBinder[] binders = worker.getBinders();
+			int[] index = template.getIndexes();
+			PreparedStatement ps = this.getStatement(conn);
+			Object[] elements = null;
+			for (int i = 0; i < index.length; i++)
+			{
+				elements = new Object[records.size()];
+				int row = 0;
+				for (Record record : records)
+				{
+					elements[row++] = this.element(i, record.get(index[i]), binders);
+				}
+				ps.setArray(i + 1, conn.createArrayOf(types[i], elements));
+			}
+			ps.executeUpdate();
+			return 0;
+		}
+
+		/**
+		 * Get the statement prepared once on the connection, which is
+		 * prepared again if the connection was changed.
+		 */
+		protected PreparedStatement getStatement(Connection conn) throws SQLException
+		{
+			if (statement == null || connection != conn)
+			{
+				this.close();
+				statement = conn.prepareStatement(insert);
+				connection = conn;
+			}
+			return statement;
+		}
+
+		protected void prepare(LoadMaster master, Connection conn, InsertTemplate template)
+		{
+			String[] columns = template.getColumns();
+
+			Map<String, String> names = null;
+			Map<String, String> kinds = null;
+			try
+			{
+				names = ColumnBinder.resolveColumns(conn, template.getTable(), "TYPE_NAME");
+				kinds = ColumnBinder.resolveColumns(conn, template.getTable(), "DATA_TYPE");
+			}
+			catch (SQLException e)
+			{
+				names = new HashMap<String, String>();
+				kinds = new HashMap<String, String>();
+			}
+
+			String format = master.getDateFormat();
+			types = new String[columns.length];
+			dates = new ColumnBinder[columns.length];
+			StringBuilder unnest = new StringBuilder();
+			StringBuilder alias = new StringBuilder();
+			String key = null;
+			for (int i = 0; i < columns.length; i++)
+			{
+				key = columns[i] == null ? null : ColumnBinder.unquote(columns[i]).toUpperCase();
+				types[i] = element(key == null ? null : names.get(key));
+				if (format != null && key != null && kinds.get(key) != null)
+				{
+					int kind = Integer.parseInt(kinds.get(key));
+					if (kind == Types.DATE || kind == Types.TIME || kind == Types.TIMESTAMP)
+					{
+						dates[i] = ColumnBinder.of(kind == Types.TIME ? Types.TIME : Types.TIMESTAMP, format);
+					}
+				}
+				if (i > 0)
+				{
+					unnest.append(',');
+					alias.append(',');
+				}
+				unnest.append("?::").append(types[i]).append("[]");
+				alias.append('c').append(i + 1);
+			}
+
+			insert = "INSERT INTO " + template.getTable() + " (" + template.getTarget() + ") SELECT "
+					+ select(template.getValues()) + " FROM unnest(" + unnest + ") AS u(" + alias + ")";
+		}
+	}
+
+	public static final String ENGINE_COPY = "copy";
+
+	public static final String ENGINE_UNNEST = "unnest";
+
+	/**
+	 * Tell whether every value of the template is a plain parameter, so that
+	 * the records could be copied as they are.
+	 */
+	public static boolean isPlain(InsertTemplate template)
+	{
+		for (String column : template.getColumns())
+		{
+			if (column == null)
+			{
+				return false;
+			}
+		}
+		return template.getValues().replaceAll("\\s+", "").matches("\\?(,\\?)*");
+	}
+
+	@Override
+	public boolean accepts(String url)
+	{
+		return url.startsWith("jdbc:postgresql:");
+	}
+
+	/**
+	 * The columns of an expression index are the expressions, so the index is
+	 * deferred only if its definition is found.
+	 */
+	@Override
+	protected boolean isDeferrable(SecondaryIndex index)
+	{
+		return true;
+	}
+
+	/**
+	 * List the indexes with their definitions by pg_get_indexdef, so that the
+	 * method, expressions and predicate of each index are kept.
+	 */
+	@Override
+	public List<SecondaryIndex> listIndexes(Connection conn, String table) throws SQLException
+	{
+		List<SecondaryIndex> indexes = super.listIndexes(conn, table);
+
+		PreparedStatement ps = conn.prepareStatement("SELECT pg_get_indexdef(c.oid) FROM pg_class c"
+				+ " JOIN pg_namespace n ON n.oid = c.relnamespace"
+				+ " WHERE c.relkind = 'i' AND c.relname = ? AND n.nspname = COALESCE(?, current_schema())");
+		try
+		{
+			Iterator<SecondaryIndex> iter = indexes.iterator();
+			SecondaryIndex index = null;
+			while (iter.hasNext())
+			{
+				index = iter.next();
+				ps.setString(1, index.getName());
+				ps.setString(2, index.getSchema());
+				ResultSet rs = ps.executeQuery();
+				try
+				{
+					if (rs.next() && rs.getString(1) != null)
+					{
+						index.setDefinition(rs.getString(1));
+					}
+					else
+					{
+						iter.remove();
+					}
+				}
+				finally
+				{
+					rs.close();
+				}
+			}
+		}
+		finally
+		{
+			ps.close();
+		}
+
+		return indexes;
+	}
+
+	@Override
+	public LoadEngine newEngine(LoadMaster master)
+	{
+		String engine = master.getEngine();
+		if (ENGINE_UNNEST.equalsIgnoreCase(engine))
+		{
+			return new UnnestEngine();
+		}
+		if ((engine == null || ENGINE_COPY.equalsIgnoreCase(engine)) && isPlain(master.getTemplate()))
+		{
+			return new CopyEngine();
+		}
+		return super.newEngine(master);
+	}
+}
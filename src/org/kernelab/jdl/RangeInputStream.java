@@ -0,0 +1,120 @@
+package org.kernelab.jdl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An InputStream over a byte range of a file. The file is opened on the first
+ * read, so that the streams which are never read would not hold the file.
+ */
+public class RangeInputStream extends InputStream
+{
+	private File				source;
+
+	private RandomAccessFile	file;
+
+	private FileChannel			channel;
+
+	private long				position;
+
+	private long				end;
+
+	private long				mark;
+
+	public RangeInputStream(File file, long start, long end) throws IOException
+	{
+		this.source = file;
+		this.position = start;
+		this.mark = start;
+		this.end = Math.min(end, file.length());
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		return (int) Math.min(Math.max(end - position, 0L), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.source = null;
+		if (file != null)
+		{
+			file.close();
+		}
+	}
+
+	protected FileChannel getChannel() throws IOException
+	{
+		if (channel == null)
+		{
+			if (source == null)
+			{
+				throw new IOException("Stream closed");
+			}
+			this.file = new RandomAccessFile(source, "r");
+			this.channel = this.file.getChannel();
+		}
+		return channel;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit)
+	{
+		this.mark = position;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] b = new byte[1];
+		return this.read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (position >= end)
+		{
+			return -1;
+		}
+
+		len = (int) Math.min(len, end - position);
+		if (len == 0)
+		{
+			return 0;
+		}
+
+		int reads = this.getChannel().read(ByteBuffer.wrap(b, off, len), position);
+		if (reads > 0)
+		{
+			position += reads;
+		}
+		return reads;
+	}
+
+	@Override
+	public synchronized void reset() throws IOException
+	{
+		this.position = mark;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long skip = Math.max(Math.min(n, end - position), 0L);
+		position += skip;
+		return skip;
+	}
+}
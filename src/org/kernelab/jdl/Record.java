@@ -5,29 +5,179 @@ import java.nio.charset.Charset;
 
 public class Record
 {
-	public final long		id;
+	protected static final Charset	UTF8			= Charset.forName("UTF-8");
 
-	public final String[]	data;
+	/**
+	 * The bits of an id which count the records in a range of the file, the
+	 * range is kept in the bits above.
+	 */
+	public static final int			RANGE_SHIFT	= 40;
+
+	/**
+	 * Get the label of the id, that is the number of the record, prefixed by
+	 * its range as range:number if the file is split.
+	 */
+	public static String label(long id)
+	{
+		long range = id >>> RANGE_SHIFT;
+		return range == 0 ? String.valueOf(id) : range + ":" + (id & ((1L << RANGE_SHIFT) - 1));
+	}
+
+	/**
+	 * Count the bytes of the text encoded in UTF-8 from its chars, without
+	 * encoding it. An unpaired surrogate is counted as 3 bytes.
+	 */
+	public static long utf8Length(CharSequence text)
+	{
+		long bytes = 0L;
+		char c = 0;
+		for (int i = 0, n = text.length(); i < n; i++)
+		{
+			c = text.charAt(i);
+			if (c < 0x80)
+			{
+				bytes += 1;
+			}
+			else if (c < 0x800)
+			{
+				bytes += 2;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1)))
+			{
+				bytes += 4;
+				i++;
+			}
+			else
+			{
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * The id of a detached record, -1 if it belongs to a batch.
+	 * 
+	 * @deprecated use {@link #getId()} instead.
+	 */
+	@Deprecated
+	public final long			id;
+
+	/**
+	 * The data of a detached record, null if it belongs to a batch.
+	 * 
+	 * @deprecated use {@link #getData()} instead.
+	 */
+	@Deprecated
+	public final String[]		data;
+
+	private final RecordBatch	batch;
+
+	private final int			row;
 
 	public Record(long id, String[] data)
 	{
 		this.id = id;
 		this.data = data;
+		this.batch = null;
+		this.row = -1;
+	}
+
+	protected Record(RecordBatch batch, int row)
+	{
+		this.id = -1;
+		this.data = null;
+		this.batch = batch;
+		this.row = row;
 	}
 
 	public long bytes(Charset cs)
 	{
 		long bytes = 0L;
-		for (String d : this.data)
+		for (int i = 0; i < this.columns(); i++)
+		{
+			bytes += this.bytes(cs, i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the bytes of the given columns encoded in the given charset. The
+	 * bytes of UTF-8 are counted from the chars without encoding.
+	 */
+	public long bytes(Charset cs, int[] columns)
+	{
+		long bytes = 0L;
+		for (int i = 0; i < columns.length; i++)
 		{
-			bytes += d.getBytes(cs).length;
+			bytes += this.bytes(cs, columns[i]);
 		}
 		return bytes;
 	}
 
+	protected long bytes(Charset cs, int column)
+	{
+		if (UTF8.equals(cs))
+		{
+			if (batch != null)
+			{
+				return batch.getUtf8Length(row, column);
+			}
+			return data[column] != null ? utf8Length(data[column]) : 0L;
+		}
+		String d = this.get(column);
+		return d != null ? d.getBytes(cs).length : 0L;
+	}
+
+	public int columns()
+	{
+		return batch != null ? batch.columns(row) : data.length;
+	}
+
+	/**
+	 * Get a detached copy of this record which stays valid after the batch it
+	 * belongs to is cleared.
+	 */
+	public Record detach()
+	{
+		return batch != null ? new Record(this.getId(), this.getData()) : this;
+	}
+
+	public String get(int column)
+	{
+		return batch != null ? batch.getString(row, column) : data[column];
+	}
+
+	public String[] getData()
+	{
+		if (batch == null)
+		{
+			return data;
+		}
+		String[] data = new String[this.columns()];
+		for (int i = 0; i < data.length; i++)
+		{
+			data[i] = this.get(i);
+		}
+		return data;
+	}
+
+	public long getId()
+	{
+		return batch != null ? batch.getId(row) : id;
+	}
+
+	/**
+	 * Get the label of the id of this record, see {@link #label(long)}.
+	 */
+	public String getLabel()
+	{
+		return label(this.getId());
+	}
+
 	public void printError(PrintWriter err, Exception ex)
 	{
-		err.println("Rec#" + id + ": " + ex.getLocalizedMessage());
+		err.println("Rec#" + this.getLabel() + ": " + ex.getLocalizedMessage());
 	}
 
 	@Override
@@ -38,21 +188,15 @@ public class Record
 
 	public String toString(String split)
 	{
-		StringBuilder buf = new StringBuilder("Rec#" + id + ": ");
+		StringBuilder buf = new StringBuilder("Rec#" + this.getLabel() + ": ");
 
-		boolean first = true;
-
-		for (String d : data)
+		for (int i = 0; i < this.columns(); i++)
 		{
-			if (first)
-			{
-				first = false;
-			}
-			else
+			if (i > 0)
 			{
 				buf.append(split);
 			}
-			buf.append(d);
+			buf.append(this.get(i));
 		}
 
 		return buf.toString();
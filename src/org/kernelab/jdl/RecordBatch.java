@@ -0,0 +1,249 @@
+package org.kernelab.jdl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A batch of records whose cells are all kept in one char arena with an offset
+ * table. The batch is meant to be cleared and refilled again and again, the
+ * records got from it are views which are only valid until the batch is
+ * cleared, and a cell is turned into String only when it is asked for.
+ */
+public class RecordBatch extends AbstractList<Record> implements RandomAccess
+{
+	public static final int	DEFAULT_ARENA_SIZE	= 1 << 16;
+
+	private char[]			arena;
+
+	private int				used				= 0;
+
+	/**
+	 * The bounds of cells, cell i is [cells[2i], cells[2i+1]), a null cell has
+	 * its upper bound -1.
+	 */
+	private int[]			cells				= new int[256];
+
+	private int				count				= 0;
+
+	/**
+	 * The first cell of each row, the cells of row r are [rows[r], rows[r+1]).
+	 */
+	private int[]			rows				= new int[65];
+
+	private long[]			ids					= new long[64];
+
+	private Record[]		views				= new Record[64];
+
+	private int				size				= 0;
+
+	private boolean			open				= false;
+
+	public RecordBatch()
+	{
+		this(DEFAULT_ARENA_SIZE);
+	}
+
+	public RecordBatch(int arenaSize)
+	{
+		this.arena = new char[Math.max(arenaSize, 16)];
+	}
+
+	/**
+	 * Append a cell which is decoded from the remaining bytes of the given
+	 * buffer.
+	 */
+	public RecordBatch addCell(ByteBuffer bytes, CharsetDecoder decoder)
+	{
+		this.ensureArena((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()));
+		CharBuffer out = CharBuffer.wrap(arena, used, arena.length - used);
+		decoder.reset();
+		decoder.decode(bytes, out, true);
+		decoder.flush(out);
+		return this.addBounds(used, out.position());
+	}
+
+	public RecordBatch addCell(char[] chars, int offset, int length)
+	{
+		this.ensureArena(length);
+		System.arraycopy(chars, offset, arena, used, length);
+		return this.addBounds(used, used + length);
+	}
+
+	public RecordBatch addCell(String cell)
+	{
+		if (cell == null)
+		{
+			return this.addNull();
+		}
+		int length = cell.length();
+		this.ensureArena(length);
+		cell.getChars(0, length, arena, used);
+		return this.addBounds(used, used + length);
+	}
+
+	protected RecordBatch addBounds(int from, int to)
+	{
+		if ((count + 1) * 2 > cells.length)
+		{
+			cells = Arrays.copyOf(cells, cells.length * 2);
+		}
+		cells[count * 2] = from;
+		cells[count * 2 + 1] = to;
+		count++;
+		if (to > used)
+		{
+			used = to;
+		}
+		return this;
+	}
+
+	public RecordBatch addNull()
+	{
+		return this.addBounds(used, -1);
+	}
+
+	/**
+	 * Copy all cells of the given record as a new row of this batch.
+	 */
+	public RecordBatch append(Record record)
+	{
+		this.begin(record.getId());
+		for (int i = 0; i < record.columns(); i++)
+		{
+			this.addCell(record.get(i));
+		}
+		return this.end();
+	}
+
+	public RecordBatch begin(long id)
+	{
+		if (open)
+		{
+			this.end();
+		}
+		if (size + 2 > rows.length)
+		{
+			rows = Arrays.copyOf(rows, rows.length * 2);
+		}
+		if (size + 1 > ids.length)
+		{
+			ids = Arrays.copyOf(ids, ids.length * 2);
+			views = Arrays.copyOf(views, views.length * 2);
+		}
+		ids[size] = id;
+		rows[size] = count;
+		open = true;
+		return this;
+	}
+
+	@Override
+	public void clear()
+	{
+		used = 0;
+		count = 0;
+		size = 0;
+		open = false;
+	}
+
+	public int columns(int row)
+	{
+		return rows[row + 1] - rows[row];
+	}
+
+	public RecordBatch end()
+	{
+		if (open)
+		{
+			open = false;
+			size++;
+			rows[size] = count;
+		}
+		return this;
+	}
+
+	protected void ensureArena(int more)
+	{
+		if (used + more > arena.length)
+		{
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, used + more));
+		}
+	}
+
+	@Override
+	public Record get(int row)
+	{
+		if (row < 0 || row >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+		}
+		Record view = views[row];
+		if (view == null)
+		{
+			view = views[row] = new Record(this, row);
+		}
+		return view;
+	}
+
+	public long getId(int row)
+	{
+		return ids[row];
+	}
+
+	public String getString(int row, int column)
+	{
+		int cell = rows[row] + column;
+		if (cell >= rows[row + 1])
+		{
+			throw new IndexOutOfBoundsException("Column: " + column + ", Columns: " + columns(row));
+		}
+		int from = cells[cell * 2], to = cells[cell * 2 + 1];
+		return to < 0 ? null : new String(arena, from, to - from);
+	}
+
+	/**
+	 * Count the bytes of the cell encoded in UTF-8 from the arena, 0 for null.
+	 */
+	public long getUtf8Length(int row, int column)
+	{
+		int cell = rows[row] + column;
+		if (cell >= rows[row + 1])
+		{
+			throw new IndexOutOfBoundsException("Column: " + column + ", Columns: " + columns(row));
+		}
+		int from = cells[cell * 2], to = cells[cell * 2 + 1];
+		return to < 0 ? 0L : Record.utf8Length(CharBuffer.wrap(arena, from, to - from));
+	}
+
+	/**
+	 * Discard the last row.
+	 */
+	public RecordBatch removeLast()
+	{
+		this.end();
+		if (size > 0)
+		{
+			size--;
+			count = rows[size];
+			used = 0;
+			for (int i = count * 2 - 1; i > 0; i -= 2)
+			{
+				if (cells[i] >= 0)
+				{
+					used = cells[i];
+					break;
+				}
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+}
@@ -2,25 +2,12 @@ package org.kernelab.jdl;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
-import org.kernelab.basis.Tools;
 
 public class RecordParser implements Iterator<Record>
 {
-	protected static boolean samePrefix(char[] a, int from, char[] b)
-	{
-		for (int i = from; i < a.length; i++)
-		{
-			if (a[i] != b[i - from])
-			{
-				return false;
-			}
-		}
-		return true;
-	}
+	public static final int	DEFAULT_BUFFER_SIZE	= 1 << 16;
 
 	protected static boolean startWith(char[] a, int from, char[] b)
 	{
@@ -42,24 +29,39 @@ public class RecordParser implements Iterator<Record>
 
 	private int				columnsNeed	= -1;
 
-	private Reader			reader;
-
-	private char[]			buff		= new char[1000];
+	private boolean[]		columnsUsed	= null;
 
-	private List<String>	cols		= new LinkedList<String>();
+	private Reader			reader;
 
-	private StringBuilder	cell		= new StringBuilder();
+	private char[]			buff		= new char[DEFAULT_BUFFER_SIZE];
 
 	private int				len			= 0;
 
 	private int				pos			= 0;
 
+	private boolean			eof			= false;
+
 	private boolean			begin		= false;
 
+	private boolean			ended		= false;
+
 	private Record			next		= null;
 
+	private RecordBatch		single		= new RecordBatch(16);
+
 	private long			id			= 1;
 
+	/**
+	 * The range of the file parsed by this parser, counted from 1, or 0 if the
+	 * file is not split.
+	 */
+	private int				range		= 0;
+
+	/**
+	 * The byte offset in the file where the range begins.
+	 */
+	private long			offset		= 0L;
+
 	protected void close()
 	{
 		try
@@ -76,16 +78,36 @@ public class RecordParser implements Iterator<Record>
 		return buff;
 	}
 
+	public int getBufferSize()
+	{
+		return buff.length;
+	}
+
 	public int getColumnsNeed()
 	{
 		return columnsNeed;
 	}
 
+	public boolean[] getColumnsUsed()
+	{
+		return columnsUsed;
+	}
+
 	protected char[] getColumnTerminator()
 	{
 		return columnTerminator;
 	}
 
+	public long getOffset()
+	{
+		return offset;
+	}
+
+	public int getRange()
+	{
+		return range;
+	}
+
 	public Reader getReader()
 	{
 		return reader;
@@ -101,34 +123,70 @@ public class RecordParser implements Iterator<Record>
 		return skip;
 	}
 
-	@Override
-	public boolean hasNext()
+	protected void begin() throws IOException
 	{
 		if (!begin)
 		{
 			begin = true;
-			try
+			for (int i = 0; i < this.skip; i++)
 			{
-				for (int i = 0; i < this.skip; i++)
+				single.clear();
+				if (!this.parseRecord(single))
 				{
-					if (this.nextRecord() == null)
-					{
-						break;
-					}
+					ended = true;
+					break;
 				}
+			}
+			single.clear();
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (this.next == null && !this.ended)
+		{
+			try
+			{
 				this.next = this.nextRecord();
 			}
 			catch (IOException e)
 			{
 				throw new RuntimeException(e);
 			}
+			if (this.next == null)
+			{
+				this.ended = true;
+			}
 		}
 		return this.next != null;
 	}
 
-	protected Record newRecord(String[] data)
+	protected boolean isColumnUsed(int column)
+	{
+		return columnsUsed == null || column >= columnsUsed.length || columnsUsed[column];
+	}
+
+	/**
+	 * Tell whether no more record could be read, without parsing. This is
+	 * cheap but may answer false even if the input is just to end.
+	 */
+	public boolean isEnded()
+	{
+		return this.next == null && (this.ended || this.isExhausted());
+	}
+
+	/**
+	 * Tell whether all the input was consumed.
+	 */
+	protected boolean isExhausted()
 	{
-		return new Record(id++, data);
+		return eof && pos >= len;
+	}
+
+	protected long newId()
+	{
+		return id++;
 	}
 
 	@Override
@@ -136,138 +194,201 @@ public class RecordParser implements Iterator<Record>
 	{
 		try
 		{
+			this.hasNext();
 			return this.next;
 		}
 		finally
 		{
-			try
-			{
-				this.next = this.nextRecord();
-			}
-			catch (IOException e)
-			{
-				throw new RuntimeException(e);
-			}
+			this.next = null;
 		}
 	}
 
+	/**
+	 * Parse the next record as a detached one.
+	 * 
+	 * @return the next record or null if no more record.
+	 */
 	protected Record nextRecord() throws IOException
 	{
-		cols.clear();
+		this.begin();
+		single.clear();
+		return this.parseRecord(single) ? single.get(0).detach() : null;
+	}
+
+	/**
+	 * Parse the next record and append it to the given batch.
+	 * 
+	 * @return false if no more record.
+	 */
+	public boolean nextRecord(RecordBatch batch) throws IOException
+	{
+		if (this.next != null)
+		{
+			batch.append(this.next);
+			this.next = null;
+			return true;
+		}
+		if (this.ended)
+		{
+			return false;
+		}
+		this.begin();
+		if (this.parseRecord(batch))
+		{
+			return true;
+		}
+		else
+		{
+			this.ended = true;
+			return false;
+		}
+	}
+
+	/**
+	 * Keep the chars from the given mark and read more into the buffer. The
+	 * kept chars are moved to the head of the buffer, or the buffer is enlarged
+	 * if nothing could be discarded.
+	 * 
+	 * @return the distance which the kept chars were moved.
+	 */
+	protected int fill(int mark)
+	{
+		int shift = 0;
+
+		if (mark > 0)
+		{
+			System.arraycopy(buff, mark, buff, 0, len - mark);
+			len -= mark;
+			pos -= mark;
+			shift = mark;
+		}
+		else if (len == buff.length)
+		{
+			buff = Arrays.copyOf(buff, buff.length * 2);
+		}
+
+		int reads = -1;
+		try
+		{
+			reads = this.getReader().read(buff, len, buff.length - len);
+		}
+		catch (IOException e)
+		{
+			reads = -1;
+		}
+
+		if (reads > 0)
+		{
+			len += reads;
+		}
+		else if (reads == -1)
+		{
+			eof = true;
+		}
+
+		return shift;
+	}
+
+	/**
+	 * Parse the next record into the given batch.
+	 * 
+	 * @return false if no more record.
+	 */
+	protected boolean parseRecord(RecordBatch batch) throws IOException
+	{
 		char[] colTerm = this.getColumnTerminator(), recTerm = this.getRecordTerminator();
-		int reads = -1, columns = this.getColumnsNeed();
-		boolean colTermed = false, recTermed = false, iterated = false, needCols = columns != 0;
+		char colHead = colTerm[0], recHead = recTerm[0], c = 0;
+		int columns = this.getColumnsNeed(), reach = Math.max(colTerm.length, recTerm.length), from = pos;
+		int scan = 0, hit = -1, cells = 0;
+		boolean recTermed = false, iterated = false, needCols = columns != 0;
 
 		while (true)
 		{
-			colTermed = false;
-			recTermed = false;
-
-			try
+			if (pos + reach > len && !eof)
 			{
-				reads = this.getReader().read(buff, len, buff.length - len);
-			}
-			catch (IOException e)
-			{
-				reads = -1;
+				from -= this.fill(needCols ? from : pos);
+				continue;
 			}
 
-			if (reads > 0)
+			if (pos >= len)
 			{
-				len += reads;
+				break;
 			}
 
-			for (; pos < len; pos++)
+			if (!iterated)
 			{
 				iterated = true;
-
-				if (pos <= len - colTerm.length && startWith(buff, pos, colTerm))
-				{
-					colTermed = true;
-					break;
-				}
-				else if (pos <= len - recTerm.length && startWith(buff, pos, recTerm))
-				{
-					recTermed = true;
-					break;
-				}
-				else if (pos > len - colTerm.length && samePrefix(buff, pos, colTerm))
-				{
-					break;
-				}
-				else if (pos > len - recTerm.length && samePrefix(buff, pos, recTerm))
-				{
-					break;
-				}
-			}
-
-			if (needCols)
-			{
-				cell.append(buff, 0, pos);
+				batch.begin(this.newId());
 			}
 
-			if (colTermed)
+			scan = eof ? len : len - reach + 1;
+			hit = DelimiterScanner.indexOf(buff, pos, scan, colHead, recHead);
+			if (hit < 0)
 			{
-				pos += colTerm.length;
-			}
-			else if (recTermed)
-			{
-				pos += recTerm.length;
+				pos = scan;
+				continue;
 			}
 
-			System.arraycopy(buff, pos, buff, 0, len - pos);
-			len -= pos;
-			pos = 0;
+			pos = hit;
+			c = buff[pos];
 
-			if (colTermed)
+			if (c == colHead && pos + colTerm.length <= len && startWith(buff, pos, colTerm))
 			{
 				if (needCols)
 				{
-					cols.add(cell.toString());
-					Tools.clearStringBuilder(cell);
-					if (columns > 0 && cols.size() >= columns)
+					if (this.isColumnUsed(cells))
 					{
-						needCols = false;
+						batch.addCell(buff, from, pos - from);
 					}
-				}
-			}
-			else if (recTermed || (reads == -1 && pos >= len))
-			{
-				if (needCols)
-				{
-					cols.add(cell.toString());
-					Tools.clearStringBuilder(cell);
-					if (columns > 0 && cols.size() >= columns)
+					else
+					{
+						batch.addNull();
+					}
+					if (columns > 0 && ++cells >= columns)
 					{
 						needCols = false;
 					}
 				}
+				pos += colTerm.length;
+				from = pos;
+			}
+			else if (c == recHead && pos + recTerm.length <= len && startWith(buff, pos, recTerm))
+			{
+				recTermed = true;
 				break;
 			}
+			else
+			{
+				pos++;
+			}
 		}
 
-		if (recTermed)
-		{
-			return newRecord(cols.toArray(new String[cols.size()]));
-		}
-		else
+		if (iterated)
 		{
-			try
+			if (needCols)
 			{
-				if (iterated)
+				if (this.isColumnUsed(cells))
 				{
-					return newRecord(cols.toArray(new String[cols.size()]));
+					batch.addCell(buff, from, pos - from);
 				}
 				else
 				{
-					return null;
+					batch.addNull();
 				}
 			}
-			finally
-			{
-				this.close();
-			}
+			batch.end();
+		}
+
+		if (recTermed)
+		{
+			pos += recTerm.length;
+		}
+		else
+		{
+			this.close();
 		}
+
+		return iterated;
 	}
 
 	@Override
@@ -280,18 +401,50 @@ public class RecordParser implements Iterator<Record>
 		this.buff = buff;
 	}
 
+	public RecordParser setBufferSize(int size)
+	{
+		size = Math.max(size, 16);
+		if (size != buff.length && len == 0)
+		{
+			this.buff = new char[size];
+		}
+		return this;
+	}
+
 	public RecordParser setColumnsNeed(int columns)
 	{
 		this.columnsNeed = columns;
 		return this;
 	}
 
+	/**
+	 * Set the columns which would be bound. The cells of other columns are
+	 * only scanned over and kept as null.
+	 */
+	public RecordParser setColumnsUsed(boolean[] columnsUsed)
+	{
+		this.columnsUsed = columnsUsed;
+		return this;
+	}
+
 	public RecordParser setColumnTerminator(String columnTerminator)
 	{
 		this.columnTerminator = columnTerminator != null ? columnTerminator.toCharArray() : null;
 		return this;
 	}
 
+	/**
+	 * Set the range of the file parsed by this parser, the ids of its records
+	 * are counted from 1 in the range, see {@link Record#label(long)}.
+	 */
+	public RecordParser setRange(int range, long offset)
+	{
+		this.range = range;
+		this.offset = offset;
+		this.id = ((long) range << Record.RANGE_SHIFT) + 1;
+		return this;
+	}
+
 	public RecordParser setReader(Reader reader)
 	{
 		this.reader = reader;
@@ -0,0 +1,137 @@
+package org.kernelab.jdl;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The definition of a non-unique index of the target table, which is saved
+ * when the index is deferred during loading so that it could be rebuilt
+ * afterwards.
+ */
+public class SecondaryIndex
+{
+	private String				table;
+
+	private String				catalog;
+
+	private String				schema;
+
+	private String				name;
+
+	private String				quote		= "";
+
+	private List<String>		columns		= new LinkedList<String>();
+
+	private List<Boolean>		descends	= new LinkedList<Boolean>();
+
+	/**
+	 * The complete DDL to create the index if the database tells, which is
+	 * preferred to the columns.
+	 */
+	private String				definition;
+
+	public SecondaryIndex addColumn(String column, boolean descend)
+	{
+		this.columns.add(column);
+		this.descends.add(descend);
+		return this;
+	}
+
+	public String getCatalog()
+	{
+		return catalog;
+	}
+
+	public List<String> getColumns()
+	{
+		return columns;
+	}
+
+	public String getDefinition()
+	{
+		return definition;
+	}
+
+	public List<Boolean> getDescends()
+	{
+		return descends;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Get the name of the index qualified by its schema if any.
+	 */
+	public String getQualifiedName()
+	{
+		return schema != null ? quote(schema) + "." + quote(name) : quote(name);
+	}
+
+	public String getQuote()
+	{
+		return quote;
+	}
+
+	public String getSchema()
+	{
+		return schema;
+	}
+
+	public String getTable()
+	{
+		return table;
+	}
+
+	/**
+	 * Quote the identifier as stored in the meta data.
+	 */
+	public String quote(String identifier)
+	{
+		return quote + identifier + quote;
+	}
+
+	public SecondaryIndex setCatalog(String catalog)
+	{
+		this.catalog = catalog;
+		return this;
+	}
+
+	public SecondaryIndex setDefinition(String definition)
+	{
+		this.definition = definition;
+		return this;
+	}
+
+	public SecondaryIndex setName(String name)
+	{
+		this.name = name;
+		return this;
+	}
+
+	public SecondaryIndex setQuote(String quote)
+	{
+		this.quote = quote == null || quote.trim().length() == 0 ? "" : quote.trim();
+		return this;
+	}
+
+	public SecondaryIndex setSchema(String schema)
+	{
+		this.schema = schema;
+		return this;
+	}
+
+	public SecondaryIndex setTable(String table)
+	{
+		this.table = table;
+		return this;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.getQualifiedName();
+	}
+}
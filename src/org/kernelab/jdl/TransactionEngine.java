@@ -0,0 +1,92 @@
+package org.kernelab.jdl;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+
+/**
+ * The engine which executes each batch in the pending transaction of the
+ * worker. A batch failed for a transient error is retried as a whole, and
+ * the records of a batch failed otherwise are recovered by the worker, by
+ * the update counts if a JDBC batch failed.
+ */
+public abstract class TransactionEngine implements LoadEngine
+{
+	@Override
+	public void close()
+	{
+	}
+
+	/**
+	 * Execute the loading of the records without committing.
+	 *
+	 * @return the number of records which were rejected by the database
+	 *         without failing the whole batch.
+	 */
+	protected abstract int execute(LoadWorker worker, Connection conn, InsertTemplate template,
+			List<Record> records) throws SQLException;
+
+	/**
+	 * Tell whether each batch must be committed on its own, regardless of
+	 * the commit interval.
+	 */
+	protected boolean isCommitEach()
+	{
+		return false;
+	}
+
+	@Override
+	public int[] load(LoadWorker worker, Connection conn, InsertTemplate template, List<Record> records)
+	{
+		int total = records.size();
+		Savepoint sp = null;
+		try
+		{
+			conn.setAutoCommit(false);
+
+			if (this.isCommitEach())
+			{
+				worker.flushPending(conn);
+			}
+
+			sp = worker.markPending(conn);
+
+			int bads = this.execute(worker, conn, template, records);
+
+			worker.commitPending(conn, records, total - bads);
+			if (this.isCommitEach())
+			{
+				worker.flushPending(conn);
+			}
+
+			return new int[] { total, bads };
+		}
+		catch (BatchUpdateException e)
+		{
+			int[] counts = e.getUpdateCounts();
+			worker.rollbackPending(conn, sp);
+			if (worker.isRetry(e))
+			{
+				return worker.retryBatch(template, records, e);
+			}
+			return worker.checkResult(counts, records);
+		}
+		catch (SQLException e)
+		{
+			worker.rollbackPending(conn, sp);
+			if (worker.isRetry(e))
+			{
+				return worker.retryBatch(template, records, e);
+			}
+			worker.printError(e);
+			return worker.checkResult(null, records);
+		}
+		catch (Throwable e)
+		{
+			worker.printError(e);
+			return new int[] { total, total };
+		}
+	}
+}